@@ -0,0 +1,689 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Adapter whose images are decoded on a bounded pool of background threads.
+ * <p>
+ * {@link #getImage(int)} never blocks: it returns the decoded bitmap if there
+ * is one in memory, otherwise null. {@link CoverFlowView} then calls
+ * {@link #loadImage(int, ImageLoadCallback)}, draws a placeholder for the
+ * card and redraws only that card once the bitmap arrives.
+ * <p>
+ * Subclasses implement {@link #decodeImage(int)}, which is called on a worker
+ * thread, or override {@link #decodeImage(int, int, int)} to decode at display
+ * resolution. Decoded images are kept across {@link #notifyDataSetChanged()} if
+ * the adapter {@link #hasStableIds() has stable ids}.
+ * <p>
+ * Images are never recycled by the adapter. Only those decoded into the pool
+ * of {@link #getBitmapPool()} are reused, once evicted from memory and no
+ * longer read by {@link CoverFlowView}.
+ */
+public abstract class AsyncCoverFlowAdapter extends CoverFlowAdapter {
+
+    private static final int DECODE_THREADS = 2;
+
+    private static final int DECODE_QUEUE_SIZE = 16;
+
+    public interface ImageLoadCallback {
+        /**
+         * Called on the main thread when a decode has finished.
+         *
+         * @param position position in adapter
+         * @param bitmap   decoded image, or null if decoding failed
+         */
+        void onImageLoaded(int position, Bitmap bitmap);
+    }
+
+    private final ThreadPoolExecutor mDecodeExecutor = CoverFlowExecutors
+            .newBoundedExecutor("CoverFlowDecode", DECODE_THREADS,
+                    DECODE_QUEUE_SIZE);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final int mCacheSize;
+
+    // One cache per view type, created when first needed. Main thread only.
+    private ImageCache[] mImageCaches;
+
+    // Counters of caches dropped by clearImageCache()
+    private int mDroppedHitCount;
+    private int mDroppedMissCount;
+    private int mDroppedEvictionCount;
+
+    // Reused for lookups on the main thread
+    private final CacheKey mLookupKey = new CacheKey();
+
+    // Only touched on the main thread
+    private final SparseArray<DecodeTask> mPendingTasks = new SparseArray<DecodeTask>();
+    private final SparseBooleanArray mFailedPositions = new SparseBooleanArray();
+    private int mGeneration;
+
+    // Set by CoverFlowView, one per view type. Evicted images go here and
+    // decodes take from here.
+    private volatile BitmapPool[] mBitmapPools;
+
+    // Set by CoverFlowView from its memory mode
+    private volatile Bitmap.Config mPreferredConfig;
+    private volatile boolean mUploadToHardware;
+
+    // Image being handed to callbacks and its software original, main
+    // thread only
+    private Bitmap mLoadedImage;
+    private Bitmap mLoadedSoftwareImage;
+
+    // Task being decoded on a worker thread
+    private final ThreadLocal<DecodeTask> mDecodingTask = new ThreadLocal<DecodeTask>();
+
+    // Images decoded with the pool, so they can go back to it. Main thread
+    // only, as are the maps below.
+    private final IdentityHashMap<Bitmap, BitmapPool> mOwnedImages = new IdentityHashMap<Bitmap, BitmapPool>();
+
+    // Count of bitmaps CoverFlowView is building from each image
+    private final IdentityHashMap<Bitmap, Integer> mImageUses = new IdentityHashMap<Bitmap, Integer>();
+
+    // Owned images evicted while in use, pooled when the last use ends
+    private final IdentityHashMap<Bitmap, BitmapPool> mEvictedInUse = new IdentityHashMap<Bitmap, BitmapPool>();
+
+    public AsyncCoverFlowAdapter() {
+        // Target 1/8 of the heap for decoded images
+        this((int) (Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    /**
+     * @param cacheSize size in bytes of the in-memory cache of decoded images
+     */
+    public AsyncCoverFlowAdapter(int cacheSize) {
+        mCacheSize = cacheSize;
+    }
+
+    /**
+     * Decode the image of given position. Called on a background thread.
+     *
+     * @param position position in adapter
+     * @return decoded bitmap, or null if it could not be decoded
+     */
+    protected abstract Bitmap decodeImage(int position);
+
+    /**
+     * Decode the image of given position, which will be displayed inside a box
+     * of targetWidth x targetHeight pixels at most. Called on a background
+     * thread. By default returns {@link #decodeImage(int)}.
+     *
+     * @param targetWidth  width of the box, 0 if unknown
+     * @param targetHeight height of the box, 0 if unknown
+     */
+    protected Bitmap decodeImage(int position, int targetWidth, int targetHeight) {
+        return decodeImage(position);
+    }
+
+    /**
+     * @return pool of bitmaps no longer in use, to decode into with
+     * {@link BitmapUtils#decodeSampledBitmap(String, int, int, BitmapPool)}.
+     * Called from {@link #decodeImage(int)}, the pool of the view type of the
+     * item being decoded. Null until the adapter is set to a
+     * {@link CoverFlowView}.
+     * <p>
+     * Asking for the pool while decoding hands the returned image to the
+     * adapter: it goes back to the pool once evicted. Do not keep a reference
+     * to such an image.
+     */
+    protected BitmapPool getBitmapPool() {
+        final DecodeTask task = mDecodingTask.get();
+        if (task != null) {
+            task.usedPool = true;
+            return poolOfType(task.viewType);
+        }
+
+        return poolOfType(0);
+    }
+
+    /**
+     * {@link CoverFlowView} starts building a bitmap from image, which must
+     * not be reused until {@link #releaseImage(Bitmap)}. Main thread only.
+     */
+    void acquireImage(Bitmap image) {
+        final Integer uses = mImageUses.get(image);
+        mImageUses.put(image, uses == null ? 1 : uses + 1);
+    }
+
+    /**
+     * Ends a use started by {@link #acquireImage(Bitmap)}. Main thread only.
+     */
+    void releaseImage(Bitmap image) {
+        final Integer uses = mImageUses.get(image);
+        if (uses == null) {
+            return;
+        }
+
+        if (uses > 1) {
+            mImageUses.put(image, uses - 1);
+            return;
+        }
+
+        mImageUses.remove(image);
+        final BitmapPool pool = mEvictedInUse.remove(image);
+        if (pool != null) {
+            pool.put(image);
+        }
+    }
+
+    /**
+     * @return config images should be decoded in, pass it to
+     * {@link BitmapUtils#decodeSampledBitmap(String, int, int, BitmapPool, Bitmap.Config)}.
+     * Follows {@link CoverFlowView#setMemoryMode}, null for the default config.
+     */
+    protected Bitmap.Config getPreferredConfig() {
+        return mPreferredConfig;
+    }
+
+    void setPreferredConfig(Bitmap.Config config) {
+        mPreferredConfig = config;
+    }
+
+    /**
+     * Move decoded images to graphics memory as hardware bitmaps, on versions
+     * which have them
+     */
+    void setUploadToHardware(boolean upload) {
+        mUploadToHardware = upload;
+    }
+
+    /**
+     * @return software original of image while its
+     * {@link ImageLoadCallback#onImageLoaded(int, Bitmap) callback} runs, if
+     * image was moved to graphics memory, otherwise image itself. The
+     * original must be {@link #acquireImage(Bitmap) acquired} to be read after
+     * the callback. Main thread only.
+     */
+    Bitmap getSoftwareImage(Bitmap image) {
+        return image == mLoadedImage && mLoadedSoftwareImage != null
+                ? mLoadedSoftwareImage : image;
+    }
+
+    void setBitmapPools(BitmapPool[] pools) {
+        mBitmapPools = pools;
+    }
+
+    int imageCacheHitCount() {
+        int count = mDroppedHitCount;
+        if (mImageCaches != null) {
+            for (ImageCache cache : mImageCaches) {
+                count += cache.hitCount();
+            }
+        }
+        return count;
+    }
+
+    int imageCacheMissCount() {
+        int count = mDroppedMissCount;
+        if (mImageCaches != null) {
+            for (ImageCache cache : mImageCaches) {
+                count += cache.missCount();
+            }
+        }
+        return count;
+    }
+
+    int imageCacheEvictionCount() {
+        int count = mDroppedEvictionCount;
+        if (mImageCaches != null) {
+            for (ImageCache cache : mImageCaches) {
+                count += cache.evictionCount();
+            }
+        }
+        return count;
+    }
+
+    private BitmapPool poolOfType(int viewType) {
+        final BitmapPool[] pools = mBitmapPools;
+        if (pools == null || viewType < 0 || viewType >= pools.length) {
+            return null;
+        }
+
+        return pools[viewType];
+    }
+
+    /**
+     * @return decoded image if it is already in memory, otherwise null. Never
+     * blocks.
+     */
+    @Override
+    public Bitmap getImage(int position) {
+        return imageCache(position).get(imageKey(position));
+    }
+
+    /**
+     * @return decoded image if it is already in memory, otherwise null
+     */
+    @Override
+    public Bitmap peekImage(int position) {
+        return getImage(position);
+    }
+
+    /**
+     * @return size of the decoded image if it is in memory. Override this if
+     * sizes are known before decoding, so cards get their final height at once.
+     */
+    @Override
+    public boolean getImageSize(int position, int[] outSize) {
+        final Bitmap image = getImage(position);
+        if (image == null) {
+            return false;
+        }
+
+        outSize[0] = image.getWidth();
+        outSize[1] = image.getHeight();
+        return true;
+    }
+
+    /**
+     * Decode image of given position in background. If the same position is
+     * already being decoded, only the callback is replaced. Must be called on
+     * the main thread.
+     *
+     * @param position position in adapter
+     * @param callback notified on the main thread, may be null
+     */
+    public void loadImage(int position, ImageLoadCallback callback) {
+        loadImage(position, 0, 0, callback);
+    }
+
+    /**
+     * Same as {@link #loadImage(int, ImageLoadCallback)}, the image will be
+     * decoded for a box of targetWidth x targetHeight pixels.
+     */
+    public void loadImage(int position, int targetWidth, int targetHeight,
+                          ImageLoadCallback callback) {
+        final ImageCache cache = imageCache(position);
+        final Bitmap cached = cache.get(imageKey(position));
+        if (cached != null) {
+            if (callback != null) {
+                callback.onImageLoaded(position, cached);
+            }
+            return;
+        }
+
+        if (mFailedPositions.get(position)) {
+            return;
+        }
+
+        DecodeTask task = mPendingTasks.get(position);
+        if (task != null) {
+            task.callback = callback;
+            return;
+        }
+
+        task = new DecodeTask(imageKey(position).copy(), position, cache.viewType,
+                targetWidth, targetHeight, mGeneration, callback);
+        mPendingTasks.put(position, task);
+        mDecodeExecutor.execute(task);
+    }
+
+    /**
+     * @return true if image of given position is waiting for or in decoding
+     */
+    public boolean isLoading(int position) {
+        return mPendingTasks.get(position) != null;
+    }
+
+    /**
+     * Drop every decode which has not started yet. Results of running decodes
+     * are discarded.
+     */
+    public void cancelPendingLoads() {
+        mDecodeExecutor.getQueue().clear();
+        mPendingTasks.clear();
+        mGeneration++;
+    }
+
+    /**
+     * Drop every decoded image in memory, they will be decoded again next time
+     * they are needed.
+     */
+    public void clearImageCache() {
+        cancelPendingLoads();
+        mFailedPositions.clear();
+        if (mImageCaches != null) {
+            for (ImageCache cache : mImageCaches) {
+                cache.evictAll();
+                mDroppedHitCount += cache.hitCount();
+                mDroppedMissCount += cache.missCount();
+                mDroppedEvictionCount += cache.evictionCount();
+            }
+            // View types are read again, they may have changed
+            mImageCaches = null;
+        }
+    }
+
+    /**
+     * Release decoded images according to level, one of the TRIM_MEMORY
+     * constants of {@link ComponentCallbacks2}. Called by
+     * {@link CoverFlowView#trimMemory(int)}. Released images are decoded again
+     * when they are needed.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clearImageCache();
+            return;
+        }
+
+        final int divisor;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            divisor = 2;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            divisor = 4;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            divisor = 2;
+        } else {
+            return;
+        }
+
+        if (mImageCaches != null) {
+            for (ImageCache cache : mImageCaches) {
+                cache.trimToSize(cache.maxSize() / divisor);
+            }
+        }
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+        if (hasStableIds()) {
+            // Images are keyed on id and version, the ones in memory are
+            // still valid
+            cancelPendingLoads();
+            mFailedPositions.clear();
+        } else {
+            clearImageCache();
+        }
+        super.notifyDataSetChanged();
+    }
+
+    @Override
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        for (int i = mPendingTasks.size() - 1; i >= 0; i--) {
+            final DecodeTask task = mPendingTasks.valueAt(i);
+            if (task.position >= positionStart
+                    && task.position - positionStart < itemCount) {
+                // Decoding the old content, drop what it brings
+                task.discarded = true;
+                mPendingTasks.removeAt(i);
+            }
+        }
+
+        for (int i = mFailedPositions.size() - 1; i >= 0; i--) {
+            final int position = mFailedPositions.keyAt(i);
+            if (position >= positionStart && position - positionStart < itemCount) {
+                mFailedPositions.removeAt(i);
+            }
+        }
+
+        if (!hasStableIds()) {
+            // Keyed on position only, with stable ids the version changes
+            for (int i = 0; i < itemCount; i++) {
+                imageCache(positionStart + i).remove(imageKey(positionStart + i));
+            }
+        }
+
+        super.notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        onPositionsShifted();
+        super.notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        onPositionsShifted();
+        super.notifyItemRangeRemoved(positionStart, itemCount);
+    }
+
+    @Override
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        onPositionsShifted();
+        super.notifyItemMoved(fromPosition, toPosition);
+    }
+
+    /**
+     * Pending decodes and failures are tracked by position, images without
+     * stable ids are cached by position too
+     */
+    private void onPositionsShifted() {
+        if (hasStableIds()) {
+            cancelPendingLoads();
+            mFailedPositions.clear();
+        } else {
+            clearImageCache();
+        }
+    }
+
+    /**
+     * @return cache of the view type of the item at given position. Types
+     * share the cache size by {@link #getViewTypeCacheWeight(int)}.
+     */
+    private ImageCache imageCache(int position) {
+        if (mImageCaches == null) {
+            final int typeCount = Math.max(1, getViewTypeCount());
+            int totalWeight = 0;
+            for (int i = 0; i < typeCount; i++) {
+                totalWeight += Math.max(0, getViewTypeCacheWeight(i));
+            }
+
+            mImageCaches = new ImageCache[typeCount];
+            for (int i = 0; i < typeCount; i++) {
+                final long weight = Math.max(0, getViewTypeCacheWeight(i));
+                final int size = totalWeight == 0 ? 0
+                        : (int) (mCacheSize * weight / totalWeight);
+                // LruCache needs room for something
+                mImageCaches[i] = new ImageCache(Math.max(1, size), i);
+            }
+        }
+
+        final int type = getItemViewType(position);
+        return mImageCaches[type >= 0 && type < mImageCaches.length ? type : 0];
+    }
+
+    private CacheKey imageKey(int position) {
+        if (hasStableIds()) {
+            return mLookupKey.set(getItemId(position),
+                    getItemVersion(position), CacheKey.VARIANT_IMAGE);
+        }
+
+        return mLookupKey.set(position, 0, CacheKey.VARIANT_IMAGE);
+    }
+
+    private void onDecodeFinished(DecodeTask task, Bitmap bitmap) {
+        if (task.generation != mGeneration || task.discarded) {
+            final BitmapPool pool = poolOfType(task.viewType);
+            if (bitmap != null && task.usedPool && pool != null) {
+                // Nobody has seen it
+                pool.put(task.software != null ? task.software : bitmap);
+            }
+            return;
+        }
+
+        if (mPendingTasks.get(task.position) == task) {
+            mPendingTasks.remove(task.position);
+        }
+
+        if (bitmap != null) {
+            final BitmapPool pool = poolOfType(task.viewType);
+            if (task.usedPool && pool != null && task.software == null) {
+                mOwnedImages.put(bitmap, pool);
+            }
+            imageCache(task.position).put(task.key, bitmap);
+        } else {
+            mFailedPositions.put(task.position, true);
+        }
+
+        if (task.callback != null) {
+            mLoadedImage = bitmap;
+            mLoadedSoftwareImage = task.software;
+            try {
+                task.callback.onImageLoaded(task.position, bitmap);
+            } finally {
+                mLoadedImage = null;
+                mLoadedSoftwareImage = null;
+            }
+        }
+
+        if (task.software != null) {
+            releaseSoftwareImage(task);
+        }
+    }
+
+    /**
+     * The software original of an image moved to graphics memory is no longer
+     * needed, pool it once the bitmaps being built from it are done.
+     */
+    private void releaseSoftwareImage(DecodeTask task) {
+        final BitmapPool pool = poolOfType(task.viewType);
+        if (!task.usedPool || pool == null) {
+            return;
+        }
+
+        if (mImageUses.containsKey(task.software)) {
+            mEvictedInUse.put(task.software, pool);
+        } else {
+            pool.put(task.software);
+        }
+    }
+
+    private class ImageCache extends LruCache<CacheKey, Bitmap> {
+        final int viewType;
+
+        ImageCache(int maxSize, int viewType) {
+            super(maxSize);
+            this.viewType = viewType;
+        }
+
+        @Override
+        protected int sizeOf(CacheKey key, Bitmap bitmap) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            } else {
+                return bitmap.getByteCount();
+            }
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, CacheKey key,
+                                    Bitmap oldValue, Bitmap newValue) {
+            if (oldValue == newValue) {
+                return;
+            }
+
+            // Only images the adapter owns are reused, and only evicted ones,
+            // a removed image may still be drawn
+            final BitmapPool pool = mOwnedImages.remove(oldValue);
+            if (!evicted || pool == null) {
+                return;
+            }
+
+            if (mImageUses.containsKey(oldValue)) {
+                mEvictedInUse.put(oldValue, pool);
+            } else {
+                pool.put(oldValue);
+            }
+        }
+    }
+
+    private class DecodeTask implements CoverFlowExecutors.DiscardableTask {
+        final CacheKey key;
+        final int position;
+        final int viewType;
+        final int targetWidth;
+        final int targetHeight;
+        final int generation;
+        ImageLoadCallback callback;
+        boolean discarded;
+        // Set on the worker thread, read once the result is posted
+        boolean usedPool;
+        // Decoded image, when the result was moved to graphics memory
+        Bitmap software;
+
+        DecodeTask(CacheKey key, int position, int viewType, int targetWidth,
+                   int targetHeight, int generation, ImageLoadCallback callback) {
+            this.key = key;
+            this.position = position;
+            this.viewType = viewType;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            this.generation = generation;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            Bitmap bitmap = null;
+            mDecodingTask.set(this);
+            try {
+                bitmap = decodeImage(position, targetWidth, targetHeight);
+                if (bitmap != null && mUploadToHardware
+                        && BitmapUtils.getHardwareConfig() != null
+                        && !BitmapUtils.isHardware(bitmap)) {
+                    // Derived bitmaps are built from the original, a hardware
+                    // bitmap cannot be read
+                    final Bitmap hardware = bitmap.copy(
+                            BitmapUtils.getHardwareConfig(), false);
+                    if (hardware != null) {
+                        software = bitmap;
+                        bitmap = hardware;
+                    }
+                }
+            } catch (OutOfMemoryError e) {
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                mDecodingTask.set(null);
+            }
+
+            final Bitmap result = bitmap;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onDecodeFinished(DecodeTask.this, result);
+                }
+            });
+        }
+
+        /**
+         * Called on the thread which submitted the newer task, that is the
+         * main thread.
+         */
+        @Override
+        public void onDiscarded() {
+            if (mPendingTasks.get(position) == this) {
+                mPendingTasks.remove(position);
+            }
+        }
+    }
+}
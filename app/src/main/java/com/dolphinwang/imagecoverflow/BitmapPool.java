@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Pool of mutable bitmaps which are no longer used, bucketed by width, height
+ * and config. Instead of allocating, a new reflection, mipmap level or decoded
+ * image takes its pixels from here, either drawn into with a
+ * {@link android.graphics.Canvas} or decoded into through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ * <p>
+ * Thread safe, bitmaps are pooled on the main thread and reused on workers.
+ */
+public class BitmapPool {
+
+    private final HashMap<Long, ArrayList<Bitmap>> mBuckets = new HashMap<Long, ArrayList<Bitmap>>();
+
+    // Every pooled bitmap, least recently pooled first
+    private final LinkedList<Bitmap> mOrder = new LinkedList<Bitmap>();
+
+    private int mMaxSize;
+    private int mSize;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param maxSize size in bytes of the bitmaps kept at most
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Take a bitmap of exactly given width, height and config. On KitKat and
+     * newer any larger pooled bitmap is reconfigured when there is no exact
+     * match. Content of the bitmap is undefined.
+     *
+     * @return a mutable bitmap, or null if none fits
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        final ArrayList<Bitmap> bucket = mBuckets.get(bucketKey(width, height, config));
+        if (bucket != null && !bucket.isEmpty()) {
+            final Bitmap bitmap = bucket.remove(bucket.size() - 1);
+            mOrder.remove(bitmap);
+            mSize -= sizeOf(bitmap);
+            mHitCount++;
+            return bitmap;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            final Bitmap bitmap = reconfigureLarger(width, height, config);
+            if (bitmap != null) {
+                mHitCount++;
+                return bitmap;
+            }
+        }
+
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Take a bitmap which {@link android.graphics.BitmapFactory} can decode an
+     * image of given size into. Before KitKat this needs an exact size
+     * match and decoding without sample size.
+     *
+     * @return a bitmap for inBitmap, or null if none fits
+     */
+    public Bitmap getForDecode(int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return null;
+        }
+
+        return get(width, height, config);
+    }
+
+    /**
+     * Give a bitmap which is not used anymore to the pool. Immutable bitmaps
+     * cannot be reused, they are recycled, as are those which do not fit.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        final int size = sizeOf(bitmap);
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        final Long key = bucketKey(bitmap.getWidth(), bitmap.getHeight(),
+                bitmap.getConfig());
+        ArrayList<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Bitmap>(2);
+            mBuckets.put(key, bucket);
+        } else if (bucket.contains(bitmap)) {
+            return;
+        }
+
+        bucket.add(bitmap);
+        mOrder.addLast(bitmap);
+        mSize += size;
+
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Recycle least recently pooled bitmaps until the pool holds maxSize bytes
+     * at most.
+     */
+    public synchronized void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mOrder.isEmpty()) {
+            final Bitmap bitmap = mOrder.removeFirst();
+            removeFromBucket(bitmap);
+            mSize -= sizeOf(bitmap);
+            bitmap.recycle();
+        }
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Change how many bytes the pool keeps at most, trimming it if needed.
+     */
+    public synchronized void resize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private Bitmap reconfigureLarger(int width, int height, Bitmap.Config config) {
+        final int needed = width * height * bytesPerPixel(config);
+
+        for (Bitmap bitmap : mOrder) {
+            if (bitmap.getAllocationByteCount() < needed) {
+                continue;
+            }
+
+            final int size = sizeOf(bitmap);
+            try {
+                bitmap.reconfigure(width, height, config);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+
+            mOrder.remove(bitmap);
+            removeFromBucket(bitmap);
+            mSize -= size;
+            return bitmap;
+        }
+
+        return null;
+    }
+
+    /**
+     * Found by identity, since a reconfigured bitmap no longer matches the
+     * key of its bucket
+     */
+    private void removeFromBucket(Bitmap bitmap) {
+        for (ArrayList<Bitmap> bucket : mBuckets.values()) {
+            if (bucket.remove(bitmap)) {
+                return;
+            }
+        }
+    }
+
+    private static Long bucketKey(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8)
+                | (config == null ? 0xFF : config.ordinal());
+    }
+
+    // ARGB_4444 is deprecated, but bitmaps decoded in it still come to the
+    // pool and must be sized right
+    @SuppressWarnings("deprecation")
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565
+                || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+            return bitmap.getByteCount();
+        } else {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    }
+}
@@ -15,46 +15,289 @@
  */
 package com.dolphinwang.imagecoverflow;
 
+import android.annotation.TargetApi;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.LinearGradient;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.graphics.Shader.TileMode;
+import android.os.Build;
 
 public class BitmapUtils {
+
+    /**
+     * Bitmap.Config.HARDWARE, only on Oreo and newer, otherwise null
+     */
+    private static final Bitmap.Config HARDWARE_CONFIG = findHardwareConfig();
+
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+
+    /**
+     * Largest power of two sample size which keeps an image of width x height
+     * at least as large as reqWidth x reqHeight.
+     *
+     * @param reqWidth  0 if width does not matter
+     * @param reqHeight 0 if height does not matter
+     */
+    public static int calculateInSampleSize(int width, int height,
+            int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if (reqWidth <= 0 && reqHeight <= 0) {
+            return inSampleSize;
+        }
+
+        while ((reqWidth <= 0 || width / (inSampleSize * 2) >= reqWidth)
+                && (reqHeight <= 0 || height / (inSampleSize * 2) >= reqHeight)) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Decode a file at about the resolution it will be displayed at.
+     */
+    public static Bitmap decodeSampledBitmap(String pathName, int reqWidth,
+            int reqHeight) {
+        return decodeSampledBitmap(pathName, reqWidth, reqHeight, null);
+    }
+
+    /**
+     * Decode a file at about the resolution it will be displayed at, into a
+     * bitmap of pool if one fits.
+     */
+    public static Bitmap decodeSampledBitmap(String pathName, int reqWidth,
+            int reqHeight, BitmapPool pool) {
+        return decodeSampledBitmap(pathName, reqWidth, reqHeight, pool, null);
+    }
+
+    /**
+     * Decode a file at about the resolution it will be displayed at, into a
+     * bitmap of pool if one fits.
+     *
+     * @param config preferred config, null for the default. RGB_565 is only
+     *               used for JPEG images, which have no alpha.
+     */
+    public static Bitmap decodeSampledBitmap(String pathName, int reqWidth,
+            int reqHeight, BitmapPool pool, Bitmap.Config config) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(pathName, options);
+
+        prepareSampledDecode(options, reqWidth, reqHeight, pool, config);
+        try {
+            return BitmapFactory.decodeFile(pathName, options);
+        } catch (IllegalArgumentException e) {
+            // Pooled bitmap did not fit after all
+            releaseInBitmap(options, pool);
+            return BitmapFactory.decodeFile(pathName, options);
+        }
+    }
+
+    /**
+     * Decode a resource at about the resolution it will be displayed at.
+     */
+    public static Bitmap decodeSampledBitmap(Resources res, int resId,
+            int reqWidth, int reqHeight) {
+        return decodeSampledBitmap(res, resId, reqWidth, reqHeight, null);
+    }
+
+    /**
+     * Decode a resource at about the resolution it will be displayed at, into
+     * a bitmap of pool if one fits.
+     */
+    public static Bitmap decodeSampledBitmap(Resources res, int resId,
+            int reqWidth, int reqHeight, BitmapPool pool) {
+        return decodeSampledBitmap(res, resId, reqWidth, reqHeight, pool, null);
+    }
+
+    /**
+     * Decode a resource at about the resolution it will be displayed at, into
+     * a bitmap of pool if one fits.
+     *
+     * @param config preferred config, null for the default. RGB_565 is only
+     *               used for JPEG images, which have no alpha.
+     */
+    public static Bitmap decodeSampledBitmap(Resources res, int resId,
+            int reqWidth, int reqHeight, BitmapPool pool, Bitmap.Config config) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(res, resId, options);
+
+        prepareSampledDecode(options, reqWidth, reqHeight, pool, config);
+        try {
+            return BitmapFactory.decodeResource(res, resId, options);
+        } catch (IllegalArgumentException e) {
+            // Pooled bitmap did not fit after all
+            releaseInBitmap(options, pool);
+            return BitmapFactory.decodeResource(res, resId, options);
+        }
+    }
+
+    /**
+     * Turn options filled by a bounds-only decode into options for the real
+     * decode: sample size for the requested size, config, and a pooled bitmap
+     * to decode into.
+     */
+    private static void prepareSampledDecode(BitmapFactory.Options options,
+            int reqWidth, int reqHeight, BitmapPool pool, Bitmap.Config config) {
+        final int sampleSize = calculateInSampleSize(options.outWidth,
+                options.outHeight, reqWidth, reqHeight);
+        options.inSampleSize = sampleSize;
+        options.inJustDecodeBounds = false;
+
+        if (config == Bitmap.Config.RGB_565
+                && !MIME_TYPE_JPEG.equals(options.outMimeType)) {
+            // May have alpha, keep it
+            config = Bitmap.Config.ARGB_8888;
+        }
+        if (config != null) {
+            options.inPreferredConfig = config;
+        }
+
+        if (pool == null || options.outWidth <= 0 || options.outHeight <= 0
+                || (config != null && config == HARDWARE_CONFIG)) {
+            // Hardware bitmaps are never decoded into
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // Any bitmap large enough will do, decoder reconfigures it
+            setInBitmap(options, pool.getForDecode(
+                    (options.outWidth + sampleSize - 1) / sampleSize,
+                    (options.outHeight + sampleSize - 1) / sampleSize,
+                    options.inPreferredConfig));
+        } else if (sampleSize == 1) {
+            setInBitmap(options, pool.getForDecode(options.outWidth,
+                    options.outHeight, options.inPreferredConfig));
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void setInBitmap(BitmapFactory.Options options, Bitmap bitmap) {
+        if (bitmap != null) {
+            options.inMutable = true;
+            options.inBitmap = bitmap;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void releaseInBitmap(BitmapFactory.Options options,
+            BitmapPool pool) {
+        if (options.inBitmap != null) {
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+        }
+    }
+
+    /**
+     * Create mipmap level of an image: level 1 is half the size, level 2 a
+     * quarter and so on. Each level is filtered from the previous one, so
+     * details are averaged instead of skipped.
+     */
+    public static Bitmap createMipmapLevel(Bitmap srcBitmap, int level) {
+        return createMipmapLevel(srcBitmap, level, null);
+    }
+
+    /**
+     * Same as {@link #createMipmapLevel(Bitmap, int)}, levels are drawn into
+     * bitmaps of pool when there are some.
+     */
+    public static Bitmap createMipmapLevel(Bitmap srcBitmap, int level,
+            BitmapPool pool) {
+        if (null == srcBitmap || level < 1 || isHardware(srcBitmap)) {
+            // Hardware bitmaps are filtered by the GPU when drawn
+            return null;
+        }
+
+        final Bitmap.Config config = srcBitmap.getConfig() != null ? srcBitmap
+                .getConfig() : Bitmap.Config.ARGB_8888;
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final Rect dst = new Rect();
+
+        Bitmap current = srcBitmap;
+        for (int i = 0; i < level; i++) {
+            final int width = Math.max(1, current.getWidth() >> 1);
+            final int height = Math.max(1, current.getHeight() >> 1);
+
+            final Bitmap next = obtainBitmap(pool, width, height, config);
+            dst.set(0, 0, width, height);
+            new Canvas(next).drawBitmap(current, null, dst, paint);
+
+            if (current != srcBitmap) {
+                releaseBitmap(pool, current);
+            }
+            current = next;
+        }
+
+        return current;
+    }
+
     public static Bitmap createReflectedBitmap(Bitmap srcBitmap,
             float reflectHeight) {
+        return createReflectedBitmap(srcBitmap, reflectHeight, null);
+    }
+
+    /**
+     * Same as {@link #createReflectedBitmap(Bitmap, float)}, the reflection is
+     * drawn into a bitmap of pool when there is one.
+     */
+    public static Bitmap createReflectedBitmap(Bitmap srcBitmap,
+            float reflectHeight, BitmapPool pool) {
+        return createReflectedBitmap(srcBitmap, reflectHeight, pool, 1);
+    }
+
+    /**
+     * Same as {@link #createReflectedBitmap(Bitmap, float, BitmapPool)}, the
+     * reflection is sampleSize times smaller than the image in both
+     * dimensions and should be scaled up when drawn. A sampleSize of 2 takes
+     * a quarter of the memory.
+     */
+    public static Bitmap createReflectedBitmap(Bitmap srcBitmap,
+            float reflectHeight, BitmapPool pool, int sampleSize) {
         if (null == srcBitmap) {
             return null;
         }
 
         int srcWidth = srcBitmap.getWidth();
         int srcHeight = srcBitmap.getHeight();
-        int reflectionWidth = srcBitmap.getWidth();
-        int reflectionHeight = reflectHeight == 0 ? srcHeight / 3
-                : (int) (reflectHeight * srcHeight);
+        int srcReflectionHeight = CoverFlowMath.reflectionSourceHeight(
+                srcHeight, reflectHeight);
+        int reflectionWidth = Math.max(1, srcWidth / sampleSize);
+        int reflectionHeight = Math.max(1, srcReflectionHeight / sampleSize);
 
-        if (0 == srcWidth || srcHeight == 0) {
+        if (0 == srcWidth || srcHeight == 0 || srcReflectionHeight == 0) {
             return null;
         }
 
-        // The matrix
-        Matrix matrix = new Matrix();
-//        matrix.preScale(1, -1);//这句完全没用
-
+        Bitmap softwareSrc = srcBitmap;
         try {
-            // The reflection bitmap, width is same with original's
-            Bitmap reflectionBitmap = Bitmap.createBitmap(srcBitmap, 0,
-                    srcHeight - reflectionHeight, reflectionWidth,
-                    reflectionHeight, matrix, false);
-
-            if (null == reflectionBitmap) {
-                return null;
+            if (isHardware(srcBitmap)) {
+                // Canvas of a bitmap cannot read hardware bitmaps. Slow and
+                // a full copy, CoverFlowView builds from the software
+                // original of images it moves to graphics memory.
+                softwareSrc = srcBitmap.copy(Bitmap.Config.ARGB_8888, false);
+                if (softwareSrc == null) {
+                    return null;
+                }
             }
 
+            // The reflection bitmap, width is same with original's. It keeps
+            // alpha whatever the config of the original is.
+            Bitmap reflectionBitmap = obtainBitmap(pool, reflectionWidth,
+                    reflectionHeight, Bitmap.Config.ARGB_8888);
+
             Canvas canvas = new Canvas(reflectionBitmap);
+            canvas.drawBitmap(softwareSrc, new Rect(0, srcHeight
+                    - srcReflectionHeight, srcWidth, srcHeight), new Rect(
+                    0, 0, reflectionWidth, reflectionHeight),
+                    sampleSize > 1 ? new Paint(Paint.FILTER_BITMAP_FLAG) : null);
 
             Paint paint = new Paint();
             paint.setAntiAlias(true);
@@ -74,8 +317,163 @@ public class BitmapUtils {
             return reflectionBitmap;
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            if (softwareSrc != srcBitmap && softwareSrc != null) {
+                softwareSrc.recycle();
+            }
         }
 
         return null;
     }
+
+    /**
+     * Create a card in one bitmap: the image scaled to imageHeight, then gap
+     * transparent rows, then its reflection faded out the same way as
+     * {@link #createReflectedBitmap(Bitmap, float)} does.
+     *
+     * @param imageHeight   height the image is displayed at
+     * @param reflectHeight fraction of the image height shown as reflection,
+     *                      0 for none, the gap is then left out too
+     * @return card, or null if src is empty
+     */
+    public static Bitmap createCompositeBitmap(Bitmap srcBitmap, int imageHeight,
+            int gap, float reflectHeight, BitmapPool pool) {
+        if (null == srcBitmap || imageHeight <= 0) {
+            return null;
+        }
+
+        final int srcWidth = srcBitmap.getWidth();
+        final int srcHeight = srcBitmap.getHeight();
+        if (srcWidth == 0 || srcHeight == 0) {
+            return null;
+        }
+
+        final int width = CoverFlowMath.scaledWidth(srcWidth, srcHeight,
+                imageHeight);
+        final int reflectionHeight = (int) (reflectHeight * imageHeight);
+        final int srcReflectionHeight = (int) (reflectHeight * srcHeight);
+        final int reflectionTop = imageHeight + gap;
+        final boolean hasReflection = reflectionHeight > 0
+                && srcReflectionHeight > 0;
+
+        Bitmap softwareSrc = srcBitmap;
+        try {
+            if (isHardware(srcBitmap)) {
+                // Canvas of a bitmap cannot read hardware bitmaps. Slow and
+                // a full copy, CoverFlowView builds from the software
+                // original of images it moves to graphics memory.
+                softwareSrc = srcBitmap.copy(Bitmap.Config.ARGB_8888, false);
+                if (softwareSrc == null) {
+                    return null;
+                }
+            }
+
+            // Reflection and gap need alpha whatever the config of the image
+            final Bitmap composite = obtainBitmap(pool, width,
+                    hasReflection ? reflectionTop + reflectionHeight : imageHeight,
+                    Bitmap.Config.ARGB_8888);
+
+            final Canvas canvas = new Canvas(composite);
+            final Paint filter = new Paint(Paint.FILTER_BITMAP_FLAG);
+            canvas.drawBitmap(softwareSrc, null, new Rect(0, 0, width,
+                    imageHeight), filter);
+
+            if (hasReflection) {
+                canvas.drawBitmap(softwareSrc, new Rect(0, srcHeight
+                        - srcReflectionHeight, srcWidth, srcHeight), new Rect(
+                        0, reflectionTop, width, reflectionTop
+                        + reflectionHeight), filter);
+
+                final Paint paint = new Paint();
+                paint.setAntiAlias(true);
+                paint.setShader(new LinearGradient(0, reflectionTop, 0,
+                        reflectionTop + reflectionHeight, 0x70FFFFFF,
+                        0x00FFFFFF, TileMode.MIRROR));
+                paint.setXfermode(new PorterDuffXfermode(
+                        android.graphics.PorterDuff.Mode.DST_IN));
+                canvas.drawRect(0, reflectionTop, width, reflectionTop
+                        + reflectionHeight, paint);
+            }
+
+            return composite;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (softwareSrc != srcBitmap && softwareSrc != null) {
+                softwareSrc.recycle();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if bitmap lives in graphics memory only. Such a bitmap
+     * cannot be drawn into, read back or drawn on a software canvas.
+     */
+    public static boolean isHardware(Bitmap bitmap) {
+        return HARDWARE_CONFIG != null && bitmap.getConfig() == HARDWARE_CONFIG;
+    }
+
+    /**
+     * @return Bitmap.Config.HARDWARE on Oreo and newer, otherwise null
+     */
+    public static Bitmap.Config getHardwareConfig() {
+        return HARDWARE_CONFIG;
+    }
+
+    /**
+     * Move bitmap into graphics memory, releasing the original to pool. On
+     * versions without hardware bitmaps, or if the copy fails, the original is
+     * returned.
+     */
+    public static Bitmap toHardware(Bitmap bitmap, BitmapPool pool) {
+        if (HARDWARE_CONFIG == null || bitmap == null || isHardware(bitmap)) {
+            return bitmap;
+        }
+
+        final Bitmap hardware = bitmap.copy(HARDWARE_CONFIG, false);
+        if (hardware == null) {
+            return bitmap;
+        }
+
+        releaseBitmap(pool, bitmap);
+        return hardware;
+    }
+
+    private static Bitmap.Config findHardwareConfig() {
+        // Oreo, not known to the SDK this is built with
+        if (Build.VERSION.SDK_INT < 26) {
+            return null;
+        }
+
+        try {
+            return Bitmap.Config.valueOf("HARDWARE");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a cleared mutable bitmap, from pool if it has one
+     */
+    private static Bitmap obtainBitmap(BitmapPool pool, int width, int height,
+            Bitmap.Config config) {
+        final Bitmap pooled = pool != null ? pool.get(width, height, config)
+                : null;
+        if (pooled == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+
+        pooled.eraseColor(Color.TRANSPARENT);
+        return pooled;
+    }
+
+    private static void releaseBitmap(BitmapPool pool, Bitmap bitmap) {
+        if (pool != null) {
+            pool.put(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
 }
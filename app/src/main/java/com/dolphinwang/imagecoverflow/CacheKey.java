@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Key of a bitmap made for an adapter item: (itemId, version, variant).
+ * <p>
+ * Keys stored in a map must never change, use {@link #copy()} before putting
+ * one. A single mutable instance can be reused for lookups on one thread.
+ */
+final class CacheKey {
+
+    /**
+     * Image decoded by {@link AsyncCoverFlowAdapter}
+     */
+    static final int VARIANT_IMAGE = 0;
+
+    /**
+     * Reflection built by {@link BitmapUtils#createReflectedBitmap}
+     */
+    static final int VARIANT_REFLECTION = 1;
+
+    /**
+     * Image downscaled by 2, mipmap level 1. Level n uses variant
+     * VARIANT_MIPMAP_1 + n - 1.
+     */
+    static final int VARIANT_MIPMAP_1 = 2;
+
+    /**
+     * Image, gap and reflection built by
+     * {@link BitmapUtils#createCompositeBitmap}. Negative so mipmap levels can
+     * take every variant from VARIANT_MIPMAP_1 on.
+     */
+    static final int VARIANT_COMPOSITE = -1;
+
+    static int mipmapVariant(int level) {
+        return VARIANT_MIPMAP_1 + level - 1;
+    }
+
+    static int mipmapLevel(int variant) {
+        return variant - VARIANT_MIPMAP_1 + 1;
+    }
+
+    long itemId;
+    long version;
+    int variant;
+
+    CacheKey() {
+    }
+
+    CacheKey(long itemId, long version, int variant) {
+        set(itemId, version, variant);
+    }
+
+    CacheKey set(long itemId, long version, int variant) {
+        this.itemId = itemId;
+        this.version = version;
+        this.variant = variant;
+        return this;
+    }
+
+    /**
+     * Fill this key for the item at given position. Adapters without stable
+     * ids are keyed on position and identity of the image, so a position
+     * which now returns another bitmap gets another key.
+     */
+    CacheKey set(CoverFlowAdapter adapter, int position, Object image, int variant) {
+        if (adapter.hasStableIds()) {
+            return set(adapter.getItemId(position),
+                    adapter.getItemVersion(position), variant);
+        }
+
+        return set(position,
+                image == null ? 0 : System.identityHashCode(image), variant);
+    }
+
+    CacheKey copy() {
+        return new CacheKey(itemId, version, variant);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+
+        final CacheKey other = (CacheKey) o;
+        return itemId == other.itemId && version == other.version
+                && variant == other.variant;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (itemId ^ (itemId >>> 32));
+        result = 31 * result + (int) (version ^ (version >>> 32));
+        result = 31 * result + variant;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheKey{" + itemId + ", " + version + ", " + variant + "}";
+    }
+}
@@ -20,7 +20,7 @@ import android.database.DataSetObserver;
 import android.graphics.Bitmap;
 
 public abstract class CoverFlowAdapter {
-	private final DataSetObservable mDataSetObservable = new DataSetObservable();
+	private final AdapterDataObservable mDataSetObservable = new AdapterDataObservable();
 
 	public void registerDataSetObserver(DataSetObserver observer) {
 		mDataSetObservable.registerObserver(observer);
@@ -38,6 +38,50 @@ public abstract class CoverFlowAdapter {
 		mDataSetObservable.notifyInvalidated();
 	}
 
+	/**
+	 * Notify that the content of the item at given position changed, for
+	 * example a new image or a new size. Cheaper than
+	 * {@link #notifyDataSetChanged()}, only that card is refreshed.
+	 */
+	public void notifyItemChanged(int position) {
+		notifyItemRangeChanged(position, 1);
+	}
+
+	/**
+	 * Notify that the content of itemCount items from positionStart on
+	 * changed. Their count and positions must not have changed.
+	 */
+	public void notifyItemRangeChanged(int positionStart, int itemCount) {
+		mDataSetObservable.notifyItemRange(AdapterDataObservable.CHANGED,
+				positionStart, itemCount);
+	}
+
+	/**
+	 * Notify that itemCount items were inserted at positionStart. The image
+	 * on top stays on top.
+	 */
+	public void notifyItemRangeInserted(int positionStart, int itemCount) {
+		mDataSetObservable.notifyItemRange(AdapterDataObservable.INSERTED,
+				positionStart, itemCount);
+	}
+
+	/**
+	 * Notify that itemCount items from positionStart on were removed. The
+	 * image on top stays on top, or the one after it if it was removed.
+	 */
+	public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+		mDataSetObservable.notifyItemRange(AdapterDataObservable.REMOVED,
+				positionStart, itemCount);
+	}
+
+	/**
+	 * Notify that the item at fromPosition was moved to toPosition.
+	 */
+	public void notifyItemMoved(int fromPosition, int toPosition) {
+		mDataSetObservable.notifyItemRange(AdapterDataObservable.MOVED,
+				fromPosition, toPosition);
+	}
+
 	public int getItemViewType(int position) {
 		return 0;
 	}
@@ -46,7 +90,120 @@ public abstract class CoverFlowAdapter {
 		return 1;
 	}
 
+	/**
+	 * Share of the bitmap cache given to items of viewType, relative to the
+	 * other types. Each type is cached apart, so large items like banners do
+	 * not evict the bitmaps of small ones. Give types of larger images more.
+	 * 
+	 * @return weight of viewType, 1 by default for every type
+	 */
+	public int getViewTypeCacheWeight(int viewType) {
+		return 1;
+	}
+
+	/**
+	 * Indicates whether the item ids are stable across changes to the
+	 * underlying data. Bitmaps derived from images, like reflections, are kept
+	 * across {@link #notifyDataSetChanged()} only when ids are stable.
+	 * 
+	 * @return true if the same id always refers to the same item
+	 */
+	public boolean hasStableIds() {
+		return false;
+	}
+
+	/**
+	 * @return id of the item at given position, only used when
+	 *         {@link #hasStableIds()} returns true
+	 */
+	public long getItemId(int position) {
+		return position;
+	}
+
+	/**
+	 * Version of the image of the item at given position. Change it whenever
+	 * the image of an item changes, so bitmaps derived from the old image are
+	 * not used any more. Only used when {@link #hasStableIds()} returns true.
+	 */
+	public long getItemVersion(int position) {
+		return 0;
+	}
+
 	public abstract int getCount();
 
 	public abstract Bitmap getImage(int position);
+
+	/**
+	 * Get width and height of image of given position without decoding it,
+	 * from metadata the adapter already has. CoverFlowView uses this to
+	 * measure. If it returns false, the size is taken from the image itself.
+	 * 
+	 * @param outSize
+	 *            receives width at index 0 and height at index 1
+	 * @return true if outSize was filled, false if the size is unknown
+	 */
+	public boolean getImageSize(int position, int[] outSize) {
+		return false;
+	}
+
+	/**
+	 * Get image of given position which will be displayed inside a box of
+	 * targetWidth x targetHeight pixels at most. Override this to decode large
+	 * images at display resolution, for example with
+	 * {@link BitmapUtils#calculateInSampleSize(int, int, int, int)}. By default
+	 * returns {@link #getImage(int)}.
+	 * 
+	 * @param targetWidth
+	 *            width of the box, 0 if unknown
+	 * @param targetHeight
+	 *            height of the box, 0 if unknown
+	 */
+	public Bitmap getImage(int position, int targetWidth, int targetHeight) {
+		return getImage(position);
+	}
+
+	/**
+	 * Get image of given position only if the adapter already holds it in
+	 * memory, without loading or decoding anything. CoverFlowView uses this to
+	 * build reflections of cards a fling is heading to. By default returns
+	 * null, so nothing is prefetched.
+	 */
+	public Bitmap peekImage(int position) {
+		return null;
+	}
+
+	/**
+	 * Sends item range notifications to {@link CoverFlowDataObserver}s, and
+	 * {@link DataSetObserver#onChanged()} to other observers.
+	 */
+	private static class AdapterDataObservable extends DataSetObservable {
+		static final int CHANGED = 0;
+		static final int INSERTED = 1;
+		static final int REMOVED = 2;
+		static final int MOVED = 3;
+
+		void notifyItemRange(int type, int first, int second) {
+			synchronized (mObservers) {
+				// Backwards, so an observer can unregister itself
+				for (int i = mObservers.size() - 1; i >= 0; i--) {
+					final DataSetObserver observer = mObservers.get(i);
+					if (!(observer instanceof CoverFlowDataObserver)) {
+						observer.onChanged();
+						continue;
+					}
+
+					final CoverFlowDataObserver itemObserver = (CoverFlowDataObserver) observer;
+					if (type == CHANGED) {
+						itemObserver.onItemRangeChanged(first, second);
+					} else if (type == INSERTED) {
+						itemObserver.onItemRangeInserted(first, second);
+					} else if (type == REMOVED) {
+						itemObserver.onItemRangeRemoved(first, second);
+					} else {
+						itemObserver.onItemMoved(first, second);
+					}
+				}
+			}
+		}
+	}
 }
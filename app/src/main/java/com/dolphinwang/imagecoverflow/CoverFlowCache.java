@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded cache of the bitmaps made for cards, keyed on {@link CacheKey}.
+ * Unlike an {@link android.support.v4.util.LruCache} every entry remembers the
+ * position of its card, and the {@link EvictionPolicy} picks what to drop
+ * using where the cover flow currently is. Not thread safe, used on the main
+ * thread only.
+ */
+class CoverFlowCache {
+
+    private static class CacheEntry {
+        Bitmap bitmap;
+        int position;
+        int size;
+        long lastAccess;
+    }
+
+    // Access ordered, so iteration goes from least to most recently used
+    private final LinkedHashMap<CacheKey, CacheEntry> mEntries = new LinkedHashMap<CacheKey, CacheEntry>(
+            16, 0.75f, true);
+
+    private EvictionPolicy mPolicy;
+
+    private int mMaxSize;
+    private int mSize;
+
+    private long mAccessCount;
+
+    private float mCenter;
+    private int mItemCount;
+    private int mDirection;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    CoverFlowCache(int maxSize, EvictionPolicy policy) {
+        mMaxSize = maxSize;
+        mPolicy = policy;
+    }
+
+    /**
+     * Change how many bytes the cache holds at most, evicting entries if it
+     * holds more.
+     */
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    void setEvictionPolicy(EvictionPolicy policy) {
+        mPolicy = policy;
+    }
+
+    EvictionPolicy getEvictionPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Tell where the cover flow is, used to rate entries when evicting.
+     */
+    void setWindow(float center, int itemCount, int direction) {
+        mCenter = center;
+        mItemCount = itemCount;
+        mDirection = direction;
+    }
+
+    Bitmap get(CacheKey key) {
+        final CacheEntry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+
+        mHitCount++;
+        entry.lastAccess = ++mAccessCount;
+        return entry.bitmap;
+    }
+
+    /**
+     * @param key stored as is, must not change afterwards
+     */
+    void put(CacheKey key, Bitmap bitmap, int position) {
+        CacheEntry entry = new CacheEntry();
+        entry.bitmap = bitmap;
+        entry.position = position;
+        entry.size = BitmapPool.sizeOf(bitmap);
+        entry.lastAccess = ++mAccessCount;
+
+        final CacheEntry previous = mEntries.put(key, entry);
+        mSize += entry.size;
+        if (previous != null) {
+            mSize -= previous.size;
+            if (previous.bitmap != bitmap) {
+                entryRemoved(false, key, previous.bitmap);
+            }
+        }
+
+        trimToSize(mMaxSize);
+    }
+
+    Bitmap remove(CacheKey key) {
+        final CacheEntry entry = mEntries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+
+        mSize -= entry.size;
+        entryRemoved(false, key, entry.bitmap);
+        return entry.bitmap;
+    }
+
+    /**
+     * Remove every entry of given variant
+     */
+    void removeVariant(int variant) {
+        final Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = mEntries
+                .entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<CacheKey, CacheEntry> mapEntry = iterator.next();
+            if (mapEntry.getKey().variant == variant) {
+                iterator.remove();
+                mSize -= mapEntry.getValue().size;
+                entryRemoved(false, mapEntry.getKey(), mapEntry.getValue().bitmap);
+            }
+        }
+    }
+
+    /**
+     * Remove every entry of count positions from start on
+     */
+    void removePositions(int start, int count) {
+        final Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = mEntries
+                .entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<CacheKey, CacheEntry> mapEntry = iterator.next();
+            final int position = mapEntry.getValue().position;
+            if (position >= start && position - start < count) {
+                iterator.remove();
+                mSize -= mapEntry.getValue().size;
+                entryRemoved(false, mapEntry.getKey(), mapEntry.getValue().bitmap);
+            }
+        }
+    }
+
+    /**
+     * Items were inserted or removed, add delta to the position of every
+     * entry from start on. Keys are kept, so only for keys on stable ids.
+     */
+    void offsetPositions(int start, int delta) {
+        for (CacheEntry entry : mEntries.values()) {
+            if (entry.position >= start) {
+                entry.position += delta;
+            }
+        }
+    }
+
+    /**
+     * The item at from was moved to to. Keys are kept, so only for keys on
+     * stable ids.
+     */
+    void movePosition(int from, int to) {
+        for (CacheEntry entry : mEntries.values()) {
+            entry.position = CoverFlowMath.movedPosition(entry.position, from, to);
+        }
+    }
+
+    /**
+     * Evict the lowest rated entries until the cache holds maxSize bytes at
+     * most.
+     */
+    void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mEntries.isEmpty()) {
+            CacheKey victimKey = null;
+            CacheEntry victim = null;
+            float victimRate = 0;
+
+            // Least recently used first, so it wins ties
+            for (Map.Entry<CacheKey, CacheEntry> mapEntry : mEntries.entrySet()) {
+                final CacheEntry entry = mapEntry.getValue();
+                final float rate = mPolicy.rate(entry.position,
+                        entry.lastAccess, mCenter, mItemCount, mDirection);
+                if (victim == null || rate < victimRate) {
+                    victimKey = mapEntry.getKey();
+                    victim = entry;
+                    victimRate = rate;
+                }
+            }
+
+            mEntries.remove(victimKey);
+            mSize -= victim.size;
+            mEvictionCount++;
+            entryRemoved(true, victimKey, victim.bitmap);
+        }
+    }
+
+    void evictAll() {
+        trimToSize(-1);
+    }
+
+    /**
+     * Called when a bitmap leaves the cache, evicted or removed.
+     */
+    protected void entryRemoved(boolean evicted, CacheKey key, Bitmap oldValue) {
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int maxSize() {
+        return mMaxSize;
+    }
+
+    int hitCount() {
+        return mHitCount;
+    }
+
+    int missCount() {
+        return mMissCount;
+    }
+
+    int evictionCount() {
+        return mEvictionCount;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.database.DataSetObserver;
+
+/**
+ * Observer of a {@link CoverFlowAdapter} which wants to know which items
+ * changed, not only that something did. Every method falls back to
+ * {@link #onChanged()} unless overridden. Plain {@link DataSetObserver}s
+ * registered to the adapter get {@link #onChanged()} for every change.
+ */
+public abstract class CoverFlowDataObserver extends DataSetObserver {
+
+    /**
+     * Content of itemCount items from positionStart on changed, their count
+     * and positions did not.
+     */
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        onChanged();
+    }
+
+    /**
+     * itemCount items were inserted at positionStart, the ones which were at
+     * positionStart and after moved up by itemCount.
+     */
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        onChanged();
+    }
+
+    /**
+     * itemCount items from positionStart on were removed, the ones after moved
+     * down by itemCount.
+     */
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        onChanged();
+    }
+
+    /**
+     * The item at fromPosition was moved to toPosition, the ones in between
+     * shifted by one.
+     */
+    public void onItemMoved(int fromPosition, int toPosition) {
+        onChanged();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.os.Build;
+import android.os.Process;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of the bounded background executors used to keep bitmap work off
+ * the UI thread.
+ */
+final class CoverFlowExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    /**
+     * Task which wants to know when it was dropped from a full queue, so the
+     * owner can forget it was pending.
+     */
+    interface DiscardableTask extends Runnable {
+        void onDiscarded();
+    }
+
+    /**
+     * Creates the executors instead of the default threads, so tests can run
+     * background work when they choose and get the same frames on every run.
+     */
+    interface Factory {
+        ThreadPoolExecutor newExecutor(String name, int threads, int queueSize,
+                                       RejectedExecutionHandler discardHandler);
+    }
+
+    // Null unless a test set one
+    static volatile Factory sFactory;
+
+    private CoverFlowExecutors() {
+    }
+
+    /**
+     * Create an executor with a fixed number of background priority threads
+     * and a bounded queue. When the queue is full the oldest waiting task is
+     * dropped, since it was requested for a card which has most likely
+     * scrolled away already.
+     */
+    static ThreadPoolExecutor newBoundedExecutor(final String name, int threads,
+                                                 int queueSize) {
+        final Factory factory = sFactory;
+        if (factory != null) {
+            return factory.newExecutor(name, threads, queueSize,
+                    new DiscardOldestHandler());
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueSize),
+                new BackgroundThreadFactory(name), new DiscardOldestHandler());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        return executor;
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+        private final String mName;
+
+        BackgroundThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, mName + " #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static class DiscardOldestHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                return;
+            }
+
+            Runnable oldest = executor.getQueue().poll();
+            if (oldest instanceof DiscardableTask) {
+                ((DiscardableTask) oldest).onDiscarded();
+            }
+
+            executor.execute(r);
+        }
+    }
+}
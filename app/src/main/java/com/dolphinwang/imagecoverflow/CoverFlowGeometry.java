@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Position, scale and alpha of cards, as a function of their offset to the
+ * center card. Plain Java without Android dependency.
+ * <p>
+ * Everything which depends only on the offset is computed once per slot
+ * (offset -(visibleImages + 1) to visibleImages + 1) in
+ * {@link #setup}, when measurement changes. {@link #compute} then only
+ * interpolates between the two slots around the offset and applies the size
+ * of the image, it neither allocates nor logs. Results are left in the out
+ * fields, valid until the next call.
+ */
+final class CoverFlowGeometry {
+
+    // The centered card at rest is fully opaque and may occlude cards behind
+    private static final int MAX_ALPHA = 255;
+
+    // Tables indexed on distance to center, 0 to visibleImages + 1
+    private float[] mScale = new float[0];
+    private float[] mAlpha = new float[0];
+    private float[] mApproach = new float[0];
+    private float[] mLeftBase = new float[0];
+    private float[] mRightBase = new float[0];
+    private float[] mReflectionY = new float[0];
+
+    private int mChildHeight;
+    private float mReflectionFraction;
+    private int mReflectionGap;
+    private int mChildTranslateY;
+    private int mOriginalChildHeight;
+
+    /**
+     * Scale of the card, 1 for the center one
+     */
+    float outScale;
+
+    /**
+     * Scale applied to the image, outScale included
+     */
+    float outChildScale;
+
+    float outTranslateX;
+
+    /**
+     * Translation of the top of the image and of its reflection, with the
+     * image centered on its own half height
+     */
+    float outChildTranslateY;
+    float outReflectionTranslateY;
+
+    /**
+     * Half of the height of image, gap and reflection, in image pixels
+     */
+    int outHalfTotalHeight;
+
+    int outAlpha;
+
+    /**
+     * Rebuild the tables, call when any of the arguments changed.
+     *
+     * @param width                 width of the view
+     * @param visibleImages         count of cards on each side of the center
+     * @param cardScale             how much smaller each card is than the
+     *                              previous one
+     * @param alphaStep             how much more transparent each card is than
+     *                              the previous one
+     * @param childHeight           height of a card, reflection included
+     * @param reflectionTranslateY  top of the reflection of the center card
+     */
+    void setup(int width, int paddingLeft, int paddingRight, int visibleImages,
+               float cardScale, int alphaStep, int childHeight,
+               float reflectionFraction, int reflectionGap, int childTranslateY,
+               int reflectionTranslateY) {
+        final int slots = visibleImages + 2;
+        if (mScale.length != slots) {
+            mScale = new float[slots];
+            mAlpha = new float[slots];
+            mApproach = new float[slots];
+            mLeftBase = new float[slots];
+            mRightBase = new float[slots];
+            mReflectionY = new float[slots];
+        }
+
+        mChildHeight = childHeight;
+        mReflectionFraction = reflectionFraction;
+        mReflectionGap = reflectionGap;
+        mChildTranslateY = childTranslateY;
+        mOriginalChildHeight = (int) (childHeight - childHeight
+                * reflectionFraction - reflectionGap);
+
+        final int halfWidth = width >> 1;
+        for (int d = 0; d < slots; d++) {
+            final float scale = 1 - d * cardScale;
+            // Share of the space between edge and center card still to go
+            final float approach = (float) (visibleImages - d) / visibleImages;
+
+            mScale[d] = scale;
+            mAlpha[d] = MAX_ALPHA - d * alphaStep;
+            mApproach[d] = approach;
+            mLeftBase[d] = (halfWidth - paddingLeft) * approach + paddingLeft;
+            mRightBase[d] = width - (halfWidth - paddingRight) * approach
+                    - paddingRight;
+            mReflectionY[d] = reflectionTranslateY * scale;
+        }
+    }
+
+    /**
+     * Compute where to draw an image of given size at given offset to the
+     * center card. {@link #setup} must have been called.
+     *
+     * @param offset      negative on the left of the center card, positive on
+     *                    the right
+     * @param childWidth  width of the image
+     * @param childHeight height of the image
+     */
+    void compute(float offset, int childWidth, int childHeight) {
+        final float distance = Math.abs(offset);
+        int index = (int) distance;
+        if (index > mScale.length - 2) {
+            // Beyond the last slot, the tables are linear so extrapolate
+            index = mScale.length - 2;
+        }
+        final float fraction = distance - index;
+
+        final float scale = lerp(mScale, index, fraction);
+        final float originalChildHeightScale = (float) mOriginalChildHeight
+                / childHeight;
+        final float childHeightScale = originalChildHeightScale * scale;
+
+        final int scaledChildWidth = (int) (childWidth * childHeightScale);
+        final int centerChildWidth = (int) (childWidth * originalChildHeightScale);
+        final float approach = lerp(mApproach, index, fraction);
+
+        if (offset <= 0) {
+            outTranslateX = lerp(mLeftBase, index, fraction) - approach
+                    * (centerChildWidth >> 1);
+        } else {
+            outTranslateX = lerp(mRightBase, index, fraction) + approach
+                    * (centerChildWidth >> 1) - scaledChildWidth;
+        }
+
+        float alpha = lerp(mAlpha, index, fraction);
+        if (alpha < 0) {
+            alpha = 0;
+        } else if (alpha > MAX_ALPHA) {
+            alpha = MAX_ALPHA;
+        }
+
+        final int childTotalHeight = (int) (childHeight + childHeight
+                * mReflectionFraction + mReflectionGap);
+
+        // if actually child height is larger or smaller than original child
+        // height, need to change translate distance of y-axis
+        float adjustedChildTranslateY = 0;
+        if (childHeightScale != 1) {
+            adjustedChildTranslateY = (mChildHeight - childTotalHeight) >> 1;
+        }
+
+        outScale = scale;
+        outChildScale = childHeightScale;
+        outAlpha = (int) alpha;
+        outHalfTotalHeight = childTotalHeight >> 1;
+        outChildTranslateY = mChildTranslateY + adjustedChildTranslateY;
+        outReflectionTranslateY = lerp(mReflectionY, index, fraction)
+                + adjustedChildTranslateY;
+    }
+
+    private static float lerp(float[] table, int index, float fraction) {
+        final float from = table[index];
+        return from + (table[index + 1] - from) * fraction;
+    }
+}
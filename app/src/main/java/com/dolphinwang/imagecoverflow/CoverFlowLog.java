@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.util.Log;
+
+/**
+ * Logging of the cover flow classes, off by default. Set a {@link Logger} to
+ * turn it on, for example {@link #ANDROID_LOGGER}.
+ * <p>
+ * Messages are only built when logging is on: call sites check
+ * {@link #isLoggable()} first, so string concatenation costs nothing in
+ * release builds.
+ */
+public final class CoverFlowLog {
+
+    public interface Logger {
+        /**
+         * @param priority one of the priority constants of {@link Log}
+         */
+        void log(int priority, String tag, String message);
+    }
+
+    /**
+     * Writes to logcat
+     */
+    public static final Logger ANDROID_LOGGER = new Logger() {
+        @Override
+        public void log(int priority, String tag, String message) {
+            Log.println(priority, tag, message);
+        }
+    };
+
+    private static volatile Logger sLogger;
+
+    private CoverFlowLog() {
+    }
+
+    /**
+     * @param logger where messages go, null to turn logging off
+     */
+    public static void setLogger(Logger logger) {
+        sLogger = logger;
+    }
+
+    public static boolean isLoggable() {
+        return sLogger != null;
+    }
+
+    static void d(String tag, String message) {
+        final Logger logger = sLogger;
+        if (logger != null) {
+            logger.log(Log.DEBUG, tag, message);
+        }
+    }
+}
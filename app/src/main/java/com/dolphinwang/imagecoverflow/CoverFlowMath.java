@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Position and layout arithmetic of {@link CoverFlowView} and
+ * {@link BitmapUtils}. Plain Java without Android dependency.
+ */
+final class CoverFlowMath {
+
+    /**
+     * How much smaller every card is than the one next to it towards center
+     */
+    static final float CARD_SCALE = 0.15f;
+
+    /**
+     * Alpha of the outermost cards
+     */
+    static final int ALPHA_DATUM = 76;
+
+    /**
+     * Deepest mipmap level, 2 is a quarter of the image size
+     */
+    static final int MAX_MIPMAP_LEVEL = 2;
+
+    private CoverFlowMath() {
+    }
+
+    /**
+     * Alpha lost by every card away from center, so the outermost visible
+     * cards end at {@link #ALPHA_DATUM}.
+     *
+     * @param visibleImages visible cards on each side of center
+     */
+    static int alphaStep(int visibleImages) {
+        return (255 - ALPHA_DATUM) / visibleImages;
+    }
+
+    /**
+     * Y of the reflection of a card of childHeight, image and reflection
+     * included, drawn from childTranslateY.
+     */
+    static int reflectionTranslateY(int childTranslateY, int childHeight,
+                                    float reflectHeightFraction) {
+        return (int) (childTranslateY + childHeight - childHeight
+                * reflectHeightFraction);
+    }
+
+    /**
+     * Height of the image of a card of childHeight, without its reflection
+     * and gap.
+     */
+    static int imageHeight(int childHeight, float reflectHeightFraction,
+                           int reflectGap) {
+        return (int) (childHeight - childHeight * reflectHeightFraction
+                - reflectGap);
+    }
+
+    /**
+     * Rows at the bottom of an image of srcHeight mirrored as reflection,
+     * a fraction of 0 takes a third of the image.
+     */
+    static int reflectionSourceHeight(int srcHeight, float reflectHeightFraction) {
+        return reflectHeightFraction == 0 ? srcHeight / 3
+                : (int) (reflectHeightFraction * srcHeight);
+    }
+
+    /**
+     * Width of an image of srcWidth x srcHeight scaled to height, at least 1.
+     */
+    static int scaledWidth(int srcWidth, int srcHeight, int height) {
+        return Math.max(1, Math.round((float) srcWidth * height / srcHeight));
+    }
+
+    /**
+     * Deepest mipmap level, up to {@link #MAX_MIPMAP_LEVEL}, which is still
+     * at least as large as an image drawn at scale. Level n is 2^n times
+     * smaller.
+     *
+     * @return level, 0 if the image itself should be drawn
+     */
+    static int mipmapLevel(float scale) {
+        int level = 0;
+        float levelScale = scale;
+        while (level < MAX_MIPMAP_LEVEL && levelScale <= 0.5f) {
+            levelScale *= 2;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Wrap a position around the adapter, so scrolling past either end goes
+     * on with the other one.
+     *
+     * @param position any position, may be negative or past count
+     * @param count    count of items, greater than 0
+     * @return position between 0 and count - 1
+     */
+    static int wrapPosition(int position, int count) {
+        //保证左右的循环滚动 position -+ max
+        final int wrapped = position % count;
+        return wrapped < 0 ? wrapped + count : wrapped;
+    }
+
+    /**
+     * Position an item ends up at when the item at from is moved to to, the
+     * items in between shift by one.
+     */
+    static int movedPosition(int position, int from, int to) {
+        if (position == from) {
+            return to;
+        } else if (from < to && position > from && position <= to) {
+            return position - 1;
+        } else if (from > to && position >= to && position < from) {
+            return position + 1;
+        }
+
+        return position;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * What {@link CoverFlowView} spent its frames on, collected while a
+ * {@link Listener} is set with
+ * {@link CoverFlowView#setMetricsListener(Listener, int)}.
+ * <p>
+ * Timings are in microseconds and aggregated in fixed-size
+ * {@link Histogram}s, so recording allocates nothing. Cache counters are
+ * totals since the adapter was set and are updated before every report. Used
+ * on the main thread only.
+ */
+public class CoverFlowMetrics {
+
+    public interface Listener {
+        /**
+         * Called on the main thread after every given count of frames. Read
+         * what is needed and {@link #reset()} the metrics to start a new
+         * period.
+         */
+        void onMetrics(CoverFlowView<?> view, CoverFlowMetrics metrics);
+    }
+
+    /**
+     * Counts of recorded values in power of two buckets: bucket 0 holds 0,
+     * bucket i holds values from 2^(i-1) to 2^i - 1. Count, sum, minimum and
+     * maximum are exact.
+     */
+    public static final class Histogram {
+        public static final int BUCKET_COUNT = 32;
+
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mSum;
+        private long mMin = Long.MAX_VALUE;
+        private long mMax;
+
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+
+            final int bucket = Math.min(BUCKET_COUNT - 1,
+                    64 - Long.numberOfLeadingZeros(value));
+            mBuckets[bucket]++;
+            mCount++;
+            mSum += value;
+            if (value < mMin) {
+                mMin = value;
+            }
+            if (value > mMax) {
+                mMax = value;
+            }
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getSum() {
+            return mSum;
+        }
+
+        public long getMin() {
+            return mCount == 0 ? 0 : mMin;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        public double getMean() {
+            return mCount == 0 ? 0 : (double) mSum / mCount;
+        }
+
+        /**
+         * @param fraction 0.5 for the median, 0.99 for the 99th percentile
+         * @return upper bound of the bucket holding the value at fraction,
+         * never above the maximum
+         */
+        public long getPercentile(double fraction) {
+            if (mCount == 0) {
+                return 0;
+            }
+
+            final long rank = (long) Math.ceil(fraction * mCount);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(getBucketUpperBound(i), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        public long getBucketCount(int bucket) {
+            return mBuckets[bucket];
+        }
+
+        /**
+         * @return largest value bucket holds, the last one holds anything
+         * larger too
+         */
+        public static long getBucketUpperBound(int bucket) {
+            return bucket == 0 ? 0 : (1L << bucket) - 1;
+        }
+
+        public void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets[i] = 0;
+            }
+            mCount = 0;
+            mSum = 0;
+            mMin = Long.MAX_VALUE;
+            mMax = 0;
+        }
+    }
+
+    /**
+     * Whole onDraw
+     */
+    public final Histogram frameTime = new Histogram();
+
+    /**
+     * onMeasure, only when something had to be measured again
+     */
+    public final Histogram measureTime = new Histogram();
+
+    /**
+     * Computing the matrices of the cards of one frame
+     */
+    public final Histogram transformTime = new Histogram();
+
+    /**
+     * Drawing calls of the cards of one frame
+     */
+    public final Histogram drawTime = new Histogram();
+
+    /**
+     * Building one reflection or composite bitmap, inside onDraw or on the
+     * worker thread
+     */
+    public final Histogram reflectionBuildTime = new Histogram();
+
+    /**
+     * Cards drawn in one frame, placeholders included
+     */
+    public final Histogram cardsDrawn = new Histogram();
+
+    int bitmapCacheHitCount;
+    int bitmapCacheMissCount;
+    int bitmapCacheEvictionCount;
+    int imageCacheHitCount;
+    int imageCacheMissCount;
+    int imageCacheEvictionCount;
+    long recycleBinBytes;
+
+    /**
+     * @return how many times a reflection or mipmap level was found in the
+     * cache of {@link CoverFlowView}
+     */
+    public int getBitmapCacheHitCount() {
+        return bitmapCacheHitCount;
+    }
+
+    public int getBitmapCacheMissCount() {
+        return bitmapCacheMissCount;
+    }
+
+    public int getBitmapCacheEvictionCount() {
+        return bitmapCacheEvictionCount;
+    }
+
+    /**
+     * @return how many times a decoded image was found in memory, only
+     * counted for an {@link AsyncCoverFlowAdapter}
+     */
+    public int getImageCacheHitCount() {
+        return imageCacheHitCount;
+    }
+
+    public int getImageCacheMissCount() {
+        return imageCacheMissCount;
+    }
+
+    public int getImageCacheEvictionCount() {
+        return imageCacheEvictionCount;
+    }
+
+    /**
+     * @return bytes of the reflections and mipmap levels cached, and of the
+     * bitmaps pooled for reuse
+     */
+    public long getRecycleBinBytes() {
+        return recycleBinBytes;
+    }
+
+    /**
+     * Clear every histogram. Cache counters are totals and are not reset.
+     */
+    public void reset() {
+        frameTime.reset();
+        measureTime.reset();
+        transformTime.reset();
+        drawTime.reset();
+        reflectionBuildTime.reset();
+        cardsDrawn.reset();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Motion of {@link CoverFlowView} after a fling or a
+ * {@link CoverFlowView#setSelection(int) selection}. Offsets are counted in
+ * cards, velocities in cards per second and times in seconds.
+ * <p>
+ * Every method must be a pure function of its arguments, so a whole motion
+ * is known as soon as it starts: where it ends, to prefetch images there, and
+ * the offset of any frame, which makes it reproducible. Implementations must
+ * guarantee that with
+ * {@code velocity = getVelocityForTarget(start, target)}, the offset
+ * {@code getOffset(start, velocity, t)} is exactly target for any t not less
+ * than {@code getDuration(start, velocity)}.
+ *
+ * @see CoverFlowView#setPhysics(CoverFlowPhysics)
+ */
+public interface CoverFlowPhysics {
+
+    /**
+     * @return offset of the card a fling of given velocity stops on, a whole
+     * number
+     */
+    float getTargetOffset(float startOffset, float velocity);
+
+    /**
+     * @return velocity a motion must start with to stop exactly on
+     * targetOffset
+     */
+    float getVelocityForTarget(float startOffset, float targetOffset);
+
+    /**
+     * @return seconds the motion lasts
+     */
+    float getDuration(float startOffset, float velocity);
+
+    /**
+     * @param time seconds since the motion started, may be past its duration
+     * @return offset of the motion at time
+     */
+    float getOffset(float startOffset, float velocity, float time);
+}
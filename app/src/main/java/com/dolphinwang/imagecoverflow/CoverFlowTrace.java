@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Sections of the render path shown in systrace and Perfetto, on Jelly Bean
+ * MR2 and newer. Every {@link #beginSection(String)} must be closed by
+ * {@link #endSection()} on the same thread.
+ */
+final class CoverFlowTrace {
+
+    private static final boolean ENABLED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private CoverFlowTrace() {
+    }
+
+    /**
+     * @param name constant name of the section, never built per call
+     */
+    static void beginSection(String name) {
+        if (ENABLED) {
+            begin(name);
+        }
+    }
+
+    static void endSection() {
+        if (ENABLED) {
+            end();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void begin(String name) {
+        Trace.beginSection(name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void end() {
+        Trace.endSection();
+    }
+}
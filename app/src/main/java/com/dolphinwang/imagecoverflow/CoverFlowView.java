@@ -15,29 +15,40 @@
  */
 package com.dolphinwang.imagecoverflow;
 
+import android.annotation.TargetApi;
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
-import android.database.DataSetObserver;
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
+import android.graphics.ComposeShader;
+import android.graphics.LinearGradient;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PaintFlagsDrawFilter;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.Region;
+import android.graphics.Shader;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.util.LruCache;
 import android.util.AttributeSet;
-import android.util.Log;
-import android.util.SparseArray;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
-import android.view.animation.AccelerateDecelerateInterpolator;
-import android.view.animation.AnimationUtils;
-import android.widget.Scroller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * @author dolphinWang
@@ -67,9 +78,77 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         MATCH_PARENT, WRAP_CONTENT
     }
 
+    /**
+     * How reflections are rendered.
+     * <ul>
+     * <li>BITMAP: a faded copy of each image is built once and cached in
+     * {@link RecycleBin}.</li>
+     * <li>SHADER: the reflection is drawn straight from the image with a
+     * {@link BitmapShader} and a fade gradient, no reflection bitmap is ever
+     * allocated.</li>
+     * <li>COMPOSITE: image, gap and reflection are baked into one bitmap at
+     * display resolution, so each card is a single transform and a single
+     * draw. Best for catalogs whose images rarely change. Reflections of side
+     * cards stay attached to their image instead of following the floor.
+     * Until its bitmap is ready a card is drawn as in SHADER.</li>
+     * </ul>
+     */
+    public enum ReflectionMode {
+        BITMAP, SHADER, COMPOSITE
+    }
+
+    /**
+     * How much memory bitmaps made for cards take.
+     * <ul>
+     * <li>NORMAL: reflections at full resolution, images decoded in the
+     * default config.</li>
+     * <li>LOW: reflections at half resolution, a quarter of the memory, scaled
+     * up when drawn. {@link AsyncCoverFlowAdapter} decodes opaque images in
+     * RGB_565, half of the memory.</li>
+     * <li>HARDWARE: as LOW, and on Oreo and newer images and reflections are
+     * moved to graphics memory as hardware bitmaps. Images of
+     * {@link AsyncCoverFlowAdapter} are moved once their reflections are built
+     * from the decoded original. The view must then be drawn hardware
+     * accelerated.</li>
+     * </ul>
+     */
+    public enum MemoryMode {
+        NORMAL, LOW, HARDWARE
+    }
+
     private static final String VIEW_LOG_TAG = "CoverFlowView";
 
-    private static final int DURATION = 200;
+    private static final int DEFAULT_PLACEHOLDER_COLOR = 0xFFDDDDDD;
+
+    private static final int MAX_REFLECTION_SHADERS = 16;
+
+    /**
+     * Reflections are this many times smaller in {@link MemoryMode#LOW} and
+     * {@link MemoryMode#HARDWARE}
+     */
+    private static final int LOW_MEMORY_REFLECTION_SAMPLE_SIZE = 2;
+
+    /**
+     * Most cards prefetched for one fling, keep it below the queue size of
+     * the decode and reflection workers
+     */
+    private static final int MAX_PREFETCH = 12;
+
+    /**
+     * Time without memory pressure before a trimmed cache grows one step back
+     */
+    private static final long CACHE_RESTORE_DELAY = 10 * 1000;
+
+    /**
+     * Cards a jumping {@link #setSelection(int)} still animates over
+     */
+    private static final int DEFAULT_SELECTION_JUMP_DISTANCE = 3;
+
+    /**
+     * Image sizes remembered at most, the farthest from the center are
+     * forgotten first so memory does not grow with the count of items
+     */
+    private static final int MAX_RECORDED_SIZES = 256;
 
     protected final int INVALID_POSITION = -1;
 
@@ -81,13 +160,13 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
     // the visible views left and right
     protected int mVisibleImages = DEFAULT_VISIBLE_IMAGES;
 
+    // mVisibleImages as set, before it is cut down to fit the adapter
+    private int mRequestedVisibleImages = DEFAULT_VISIBLE_IMAGES;
+
     // space between each two of children
     protected final int CHILD_SPACING = -200;
 
-    private final int ALPHA_DATUM = 76;
-
     private int STANDARD_ALPHA;
-    private static final float CARD_SCALE = 0.15f;
 
     //好像是滑动切换的灵敏度?
     private static float MOVE_POS_MULTIPLE = 3.0f;
@@ -98,8 +177,6 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
     private static final float MAX_SPEED = 6.0f;
 
-    private static final float FRICTION = 10.0f;
-
     private static final int LONG_CLICK_DELAY = ViewConfiguration
             .getLongPressTimeout();
     /****
@@ -107,6 +184,17 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
      ****/
 
     private RecycleBin mRecycler;
+    private BitmapWorker mBitmapWorker;
+    private MemoryTrimmer mMemoryTrimmer;
+    private EvictionPolicy mEvictionPolicy = new DistanceEvictionPolicy();
+
+    // Offset of the last frame, tells the scroll direction to mRecycler
+    private float mLastDrawOffset;
+
+    /**
+     * Reused for cache lookups on the main thread
+     */
+    private final CacheKey mLookupKey = new CacheKey();
     protected int mCoverFlowCenter;
     private T mAdapter;
 
@@ -114,10 +202,14 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
     private int mItemCount;
 
     /**
-     * True if the data has changed since the last layout
+     * True if the data or a setting affecting card size has changed since the
+     * last measure. Until then the last measurement is reused.
      */
     boolean mDataSetChanged;
 
+    private int mLastWidthMeasureSpec;
+    private int mLastHeightMeasureSpec;
+
     protected CoverFlowGravity mGravity;
 
     protected CoverFlowLayoutMode mLayoutMode;
@@ -128,8 +220,21 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
     private Matrix mChildTransformer;
     private Matrix mReflectionTransformer;
+    private Matrix mMipmapTransformer;
+
+    /**
+     * Image pixels to screen pixels scale of the card last transformed
+     */
+    private float mChildScale;
+
+    // Card transforms per slot, rebuilt in onMeasure
+    private final CoverFlowGeometry mGeometry = new CoverFlowGeometry();
+
+    private boolean mMipmapEnabled = true;
 
     private Paint mDrawChildPaint;
+    private Paint mPlaceholderPaint;
+    private Paint mReflectionPaint;
 
     private RectF mTouchRect;
 
@@ -139,23 +244,82 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
     private float mTouchStartX;
     private float mTouchStartY;
 
+    /**
+     * Offset is kept as an exact integer part, wrapped into the adapter, plus
+     * a small float {@link #mOffset} which animations and touches work on.
+     * It is rebased whenever nothing is moving, so it never grows large and
+     * keeps its precision on any count of items.
+     */
+    private int mOffsetBase;
     private float mOffset;
 
     private float mStartOffset;
-    private long mStartTime;
 
-    private float mStartSpeed;
-    private float mDuration;
-    private Runnable mAnimationRunnable;
     private VelocityTracker mVelocity;
 
+    // Fling or setSelection() animation, stepped once per displayed frame
+    private static final int ANIMATION_NONE = 0;
+    private static final int ANIMATION_FLING = 1;
+    private static final int ANIMATION_SELECTION = 2;
+    private int mAnimation = ANIMATION_NONE;
+    private long mAnimationStartNanos;
+    private AnimationFrameCallback mFrameCallback;
+
+    // Motion of the running animation, see CoverFlowPhysics
+    private CoverFlowPhysics mPhysics = new FrictionPhysics();
+    private float mAnimationFrom;
+    private float mAnimationVelocity;
+    private float mAnimationDuration;
+    private float mAnimationTarget;
+
+    // setSelection() to a far position skips to a few cards before it
+    private boolean mSelectionJumpEnabled = true;
+    private int mSelectionJumpDistance = DEFAULT_SELECTION_JUMP_DISTANCE;
+
     private int mChildHeight;
+    private int mMaxChildTotalHeight;
+    // Set by getMaxChildTotalHeight()
+    private boolean mHasUnknownHeight;
+
+    /**
+     * Box an image is displayed in at most, passed to the adapter so it can
+     * decode images at display resolution
+     */
+    private int mImageTargetWidth;
+    private int mImageTargetHeight;
     private int mChildTranslateY;
     private int mReflectionTranslateY;
 
     private float reflectHeightFraction;
     private int reflectGap;
 
+    /**
+     * Build reflections on a background thread instead of inside onDraw
+     */
+    private boolean mAsyncReflection = true;
+
+    protected ReflectionMode mReflectionMode = ReflectionMode.BITMAP;
+
+    protected MemoryMode mMemoryMode = MemoryMode.NORMAL;
+
+    // Only collected while a listener is set
+    private CoverFlowMetrics mMetrics;
+    private CoverFlowMetrics.Listener mMetricsListener;
+    private int mMetricsFrameInterval;
+    private int mMetricsFrames;
+
+    // Spent on the cards of the frame being drawn
+    private long mFrameTransformNanos;
+    private long mFrameDrawNanos;
+    private int mFrameCards;
+
+    /**
+     * Reflection shaders of images recently drawn in
+     * {@link ReflectionMode#SHADER}. A shader holds its image, so only a few
+     * are kept.
+     */
+    private LruCache<Bitmap, ReflectionShader> mReflectionShaders;
+
     private boolean topImageClickEnable = true;
 
     private CoverFlowListener<T> mCoverFlowListener;
@@ -167,14 +331,76 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
     private int mTopImageIndex;
 
-    private Scroller mScroller;
-
     /**
      * Record origin width and height of images
      */
-    private SparseArray<int[]> mImageRecorder;
+    private ImageSizeIndex mImageRecorder;
+    private final int[] mImageSizeOut = new int[2];
+
+    /**
+     * Adapter position and bounds of each card drawn in last frame, indexed by
+     * slot from left to right. Used to invalidate a single card.
+     */
+    private int[] mCardPositions;
+    private RectF[] mCardBounds;
+    private RectF mTempRect;
+
+    /**
+     * What to draw for each slot, bounds shared with {@link #mCardBounds}.
+     * Cards out of the slots use the scratch one.
+     */
+    private Card[] mCards;
+    private final Card mScratchCard = new Card(new RectF());
+
+    /**
+     * Hide parts of cards covered by nearer cards, see
+     * {@link #setOcclusionCullingEnabled(boolean)}
+     */
+    private boolean mOcclusionCulling;
+
+    // Cards of the frame back to front, and what is left visible of one
+    private Card[] mDrawOrder;
+    private final Region mVisibleRegion = new Region();
+    private final Rect mTempIntRect = new Rect();
+
+    private final AsyncCoverFlowAdapter.ImageLoadCallback mImageLoadCallback =
+            new AsyncCoverFlowAdapter.ImageLoadCallback() {
+
+                @Override
+                public void onImageLoaded(int position, Bitmap bitmap) {
+                    if (bitmap == null || mAdapter == null) {
+                        return;
+                    }
 
-    private DataSetObserver mDataSetObserver = new DataSetObserver() {
+                    mImageRecorder.put(position, bitmap.getWidth(), bitmap.getHeight());
+
+                    final Bitmap source = ((AsyncCoverFlowAdapter) mAdapter)
+                            .getSoftwareImage(bitmap);
+                    if (!isCardVisible(position)) {
+                        // Prefetched, get its reflection ready too
+                        prefetchReflection(bitmap, source, position);
+                        return;
+                    }
+                    if (source != bitmap) {
+                        // Moved to graphics memory, the original can only be
+                        // read now
+                        prefetchReflection(bitmap, source, position);
+                    }
+
+                    final int childTotalHeight = (int) (bitmap.getHeight()
+                            + bitmap.getHeight() * reflectHeightFraction + reflectGap);
+                    if (childTotalHeight > mMaxChildTotalHeight) {
+                        // Tallest card so far, card height may change
+                        mDataSetChanged = true;
+                        requestLayout();
+                        invalidate();
+                    } else {
+                        invalidateCard(position);
+                    }
+                }
+            };
+
+    private CoverFlowDataObserver mDataSetObserver = new CoverFlowDataObserver() {
 
         @Override
         public void onChanged() {
@@ -183,18 +409,13 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
             // If current index of top image will larger than total count in future,
             // locate it to new mid.
             if (mTopImageIndex % mItemCount > nextItemCount - 1) {
+                // The animation heads for a card which may not exist anymore
+                endAnimation();
+                mOffsetBase = 0;
                 mOffset = nextItemCount - mVisibleImages - 1;
             } else { // If current index top top image will less than total count in future,
                 // change mOffset to current state in first loop
-                mOffset += mVisibleImages;
-                while (mOffset < 0 || mOffset >= mItemCount) {
-                    if (mOffset < 0) {
-                        mOffset += mItemCount;
-                    } else if (mOffset >= mItemCount) {
-                        mOffset -= mItemCount;
-                    }
-                }
-                mOffset -= mVisibleImages;
+                rebaseOffset();
             }
 
             mItemCount = nextItemCount;
@@ -210,6 +431,93 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
             super.onInvalidated();
         }
 
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            // Sizes and reflections of these items are stale, images are
+            // fetched again from the adapter when drawn
+            mImageRecorder.removeRange(positionStart, itemCount);
+            mRecycler.removePositions(positionStart, itemCount);
+
+            if (!remeasureIfNeeded()) {
+                for (int i = 0; i < mCardPositions.length; i++) {
+                    final int position = mCardPositions[i];
+                    if (position >= positionStart
+                            && position - positionStart < itemCount) {
+                        invalidateCard(position);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            final int nextItemCount = mAdapter.getCount();
+            if (mItemCount == 0 || mVisibleChildCount == 0) {
+                onChanged();
+                return;
+            }
+
+            int center = getActuallyPosition(getCenter());
+            if (center >= positionStart) {
+                center += itemCount;
+            }
+
+            mImageRecorder.offsetPositions(positionStart, itemCount);
+            mRecycler.offsetPositions(positionStart, itemCount);
+            if (visibleImagesFor(nextItemCount) != mVisibleImages) {
+                // The window was cut down to fit the adapter, now it grows
+                onChanged();
+                return;
+            }
+            onPositionsShifted(center, nextItemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            final int nextItemCount = mAdapter.getCount();
+            if (nextItemCount == 0 || mVisibleChildCount == 0) {
+                onChanged();
+                return;
+            }
+
+            int center = getActuallyPosition(getCenter());
+            if (center - positionStart >= itemCount) {
+                center -= itemCount;
+            } else if (center >= positionStart) {
+                // Removed, the first one after it takes its place
+                center = positionStart;
+            }
+
+            mImageRecorder.removeRange(positionStart, itemCount);
+            mImageRecorder.offsetPositions(positionStart + itemCount, -itemCount);
+            mRecycler.removePositions(positionStart, itemCount);
+            mRecycler.offsetPositions(positionStart + itemCount, -itemCount);
+            if (nextItemCount < mVisibleImages * 2 + 1) {
+                // Too few items left to fill the window, shrink it
+                onChanged();
+                return;
+            }
+            onPositionsShifted(center, nextItemCount);
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition) {
+            if (mVisibleChildCount == 0) {
+                onChanged();
+                return;
+            }
+
+            int center = getActuallyPosition(getCenter());
+            if (center != fromPosition) {
+                // Follow the card on top, unless it is the one moving away
+                center = CoverFlowMath.movedPosition(center, fromPosition, toPosition);
+            }
+
+            mImageRecorder.move(fromPosition, toPosition);
+            mRecycler.movePosition(fromPosition, toPosition);
+            onPositionsShifted(center, mItemCount);
+        }
+
     };
 
 
@@ -263,6 +571,17 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
         topImageClickEnable = a.getBoolean(R.styleable.ImageCoverFlowView_topImageClickEnable, true);
 
+        mReflectionMode = ReflectionMode.values()[a.getInt(
+                R.styleable.ImageCoverFlowView_reflectionMode,
+                ReflectionMode.BITMAP.ordinal())];
+
+        mMemoryMode = MemoryMode.values()[a.getInt(
+                R.styleable.ImageCoverFlowView_memoryMode,
+                MemoryMode.NORMAL.ordinal())];
+
+        mOcclusionCulling = a.getBoolean(
+                R.styleable.ImageCoverFlowView_occlusionCulling, false);
+
         a.recycle();
     }
 
@@ -272,24 +591,36 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
         mChildTransformer = new Matrix();
         mReflectionTransformer = new Matrix();
+        mMipmapTransformer = new Matrix();
 
         mTouchRect = new RectF();
 
-        mImageRecorder = new SparseArray<int[]>();
+        mImageRecorder = new ImageSizeIndex();
 
         mDrawChildPaint = new Paint();
         mDrawChildPaint.setAntiAlias(true);
         mDrawChildPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
 
+        mPlaceholderPaint = new Paint();
+        mPlaceholderPaint.setColor(DEFAULT_PLACEHOLDER_COLOR);
+
+        mReflectionPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        mReflectionShaders = new LruCache<Bitmap, ReflectionShader>(
+                MAX_REFLECTION_SHADERS);
+
+        mTempRect = new RectF();
+        mCardPositions = new int[0];
+        mCardBounds = new RectF[0];
+        mCards = new Card[0];
+        mDrawOrder = new Card[0];
+
         mCoverFlowPadding = new Rect();
 
         //抗锯齿处理
         mDrawFilter = new PaintFlagsDrawFilter(0, Paint.ANTI_ALIAS_FLAG
                 | Paint.FILTER_BITMAP_FLAG);
 
-        //滚动监听的帮助类
-        mScroller = new Scroller(getContext(),
-                new AccelerateDecelerateInterpolator());
+        mFrameCallback = new AnimationFrameCallback();
     }
 
     /**
@@ -315,8 +646,26 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
             } else {
                 mRecycler = new RecycleBin();
             }
+            mRecycler.setViewTypes(mAdapter);
+
+            if (mBitmapWorker != null) {
+                mBitmapWorker.cancel();
+            } else {
+                mBitmapWorker = new BitmapWorker();
+            }
+
+            if (mAdapter instanceof AsyncCoverFlowAdapter) {
+                // Decodes reuse what the view no longer needs
+                ((AsyncCoverFlowAdapter) mAdapter).setBitmapPools(mRecycler
+                        .getBitmapPools());
+                ((AsyncCoverFlowAdapter) mAdapter)
+                        .setPreferredConfig(getPreferredConfig());
+                ((AsyncCoverFlowAdapter) mAdapter)
+                        .setUploadToHardware(isHardwareMemoryMode());
+            }
         }
 
+        mOffsetBase = 0;
         mOffset = 0;
 
         resetCoverFlow();
@@ -328,10 +677,64 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         return mAdapter;
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            if (mMemoryTrimmer == null) {
+                mMemoryTrimmer = new MemoryTrimmer();
+            }
+            getContext().getApplicationContext().registerComponentCallbacks(
+                    mMemoryTrimmer);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // No frame callbacks while detached
+        endAnimation();
+
+        if (mMemoryTrimmer != null) {
+            getContext().getApplicationContext().unregisterComponentCallbacks(
+                    mMemoryTrimmer);
+        }
+
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Release cached bitmaps according to level, one of the TRIM_MEMORY
+     * constants of {@link ComponentCallbacks2}. Called automatically on
+     * Ice Cream Sandwich and newer while the view is attached. Caches grow
+     * back by themselves once memory pressure is gone.
+     */
+    public void trimMemory(int level) {
+        if (mAdapter instanceof AsyncCoverFlowAdapter) {
+            ((AsyncCoverFlowAdapter) mAdapter).trimMemory(level);
+        }
+
+        if (mRecycler != null) {
+            mRecycler.trimMemory(level);
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mReflectionShaders.evictAll();
+        }
+    }
+
     public void setCoverFlowListener(CoverFlowListener<T> l) {
         mCoverFlowListener = l;
     }
 
+    /**
+     * Visible images on each side for an adapter of itemCount, fewer than
+     * requested if the adapter cannot fill both sides.
+     */
+    private int visibleImagesFor(int itemCount) {
+        return Math.min(mRequestedVisibleImages, (itemCount - 1) / 2);
+    }
+
     private void resetCoverFlow() {
 
         if (mItemCount < 3) {
@@ -339,14 +742,11 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
                     "total count in adapter must larger than 3!");
         }
 
-        final int totalVisible = mVisibleImages * 2 + 1;
-        if (mItemCount < totalVisible) {
-            mVisibleImages = (mItemCount - 1) / 2;
-        }
+        mVisibleImages = visibleImagesFor(mItemCount);
 
         mChildHeight = 0;
 
-        STANDARD_ALPHA = (255 - ALPHA_DATUM) / mVisibleImages;
+        STANDARD_ALPHA = CoverFlowMath.alphaStep(mVisibleImages);
 
         if (mGravity == null) {
             mGravity = CoverFlowGravity.CENTER_VERTICAL;
@@ -364,16 +764,33 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        CoverFlowTrace.beginSection("CoverFlowView#onMeasure");
+        try {
+            measureCoverFlow(widthMeasureSpec, heightMeasureSpec);
+        } finally {
+            CoverFlowTrace.endSection();
+        }
+    }
 
+    private void measureCoverFlow(int widthMeasureSpec, int heightMeasureSpec) {
         if (mAdapter == null) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
             return;
         }
 
-        if (!mDataSetChanged) {
+        // Nothing changed since last time, reuse last measurement
+        if (!mDataSetChanged && widthMeasureSpec == mLastWidthMeasureSpec
+                && heightMeasureSpec == mLastHeightMeasureSpec
+                && mCoverFlowPadding.left == getPaddingLeft()
+                && mCoverFlowPadding.right == getPaddingRight()
+                && mCoverFlowPadding.top == getPaddingTop()
+                && mCoverFlowPadding.bottom == getPaddingBottom()) {
+            setMeasuredDimension(getMeasuredWidth(), getMeasuredHeight());
             return;
         }
 
+        final long measureStart = metricsTime();
+
         //记录控件的padding值
         mCoverFlowPadding.left = getPaddingLeft();
         mCoverFlowPadding.right = getPaddingRight();
@@ -389,7 +806,14 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         int availableHeight = heightSize - mCoverFlowPadding.top
                 - mCoverFlowPadding.bottom;
 
-        int maxChildTotalHeight = 0;
+        // Composites are built at the card height of last measurement
+        final int lastImageTargetHeight = mImageTargetHeight;
+
+        // Card height is not known yet, images are never shown larger than
+        // the available space
+        mImageTargetWidth = widthSize - mCoverFlowPadding.left
+                - mCoverFlowPadding.right;
+        mImageTargetHeight = availableHeight;
 
         /**
          * 其实就是{@linkplain #mItemCount}
@@ -397,22 +821,8 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
          */
         int visibleCount = (mVisibleImages << 1) + 1;
         //mOffset初始值为0,值向下取整
-        int mid = (int) Math.floor(mOffset + 0.5);
-        int leftChild = visibleCount >> 1;// = mVisibleImages
-        //找到adapter中起始绘制的item
-        final int startPos = getActuallyPosition(mid - leftChild);
-
-        for (int i = startPos; i < visibleCount + startPos; ++i) {
-            Bitmap child = mAdapter.getImage(i);
-            final int childHeight = child.getHeight();
-            //item高度 = bitmap高度 + bitmap投影高度 + 投影与原图间隔的高度
-            final int childTotalHeight = (int) (childHeight + childHeight
-                    * reflectHeightFraction + reflectGap);
-
-            //计算保存adapter中图片占用最大的高度值
-            maxChildTotalHeight = (maxChildTotalHeight < childTotalHeight) ? childTotalHeight
-                    : maxChildTotalHeight;
-        }
+        final int maxChildTotalHeight = getMaxChildTotalHeight(getCenter(),
+                visibleCount);
 
         if (heightMode == MeasureSpec.EXACTLY || heightMode == MeasureSpec.AT_MOST) {
             // if height which parent provided is less than child need, scale
@@ -462,14 +872,78 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
                     - mChildHeight;
         }
         //倒影移动y轴距离
-        mReflectionTranslateY = (int) (mChildTranslateY + mChildHeight - mChildHeight
-                * reflectHeightFraction);
+        mReflectionTranslateY = CoverFlowMath.reflectionTranslateY(
+                mChildTranslateY, mChildHeight, reflectHeightFraction);
 
 
         //重新计算控件高度
         setMeasuredDimension(widthSize, heightSize);
+        mLastWidthMeasureSpec = widthMeasureSpec;
+        mLastHeightMeasureSpec = heightMeasureSpec;
+        mDataSetChanged = false;
         mVisibleChildCount = visibleCount;
+        mMaxChildTotalHeight = maxChildTotalHeight;
         mWidth = widthSize;
+
+        // Height of the center card, side cards are smaller
+        mImageTargetHeight = CoverFlowMath.imageHeight(mChildHeight,
+                reflectHeightFraction, reflectGap);
+        if (mImageTargetHeight != lastImageTargetHeight && mRecycler != null) {
+            mRecycler.removeVariant(CacheKey.VARIANT_COMPOSITE);
+        }
+
+        mGeometry.setup(mWidth, mCoverFlowPadding.left, mCoverFlowPadding.right,
+                mVisibleImages, CoverFlowMath.CARD_SCALE, STANDARD_ALPHA, mChildHeight,
+                reflectHeightFraction, reflectGap, mChildTranslateY,
+                mReflectionTranslateY);
+
+        if (mCardPositions.length != visibleCount) {
+            mCardPositions = new int[visibleCount];
+            mCardBounds = new RectF[visibleCount];
+            mCards = new Card[visibleCount];
+            mDrawOrder = new Card[visibleCount];
+            for (int i = 0; i < visibleCount; i++) {
+                mCardPositions[i] = INVALID_POSITION;
+                mCardBounds[i] = new RectF();
+                mCards[i] = new Card(mCardBounds[i]);
+            }
+        }
+
+        if (mMetrics != null) {
+            mMetrics.measureTime.record(microsSince(measureStart));
+        }
+    }
+
+    /**
+     * Height of image of given adapter position, without touching the bitmap
+     * when the size is already known.
+     *
+     * @return height, or 0 if unknown because the image is still loading
+     */
+    private int obtainImageHeight(int actuallyPosition) {
+        final int index = mImageRecorder.indexOf(actuallyPosition);
+        if (index >= 0) {
+            return mImageRecorder.heightAt(index);
+        }
+
+        if (mAdapter.getImageSize(actuallyPosition, mImageSizeOut)) {
+            mImageRecorder.put(actuallyPosition, mImageSizeOut[0], mImageSizeOut[1]);
+            return mImageSizeOut[1];
+        }
+
+        if (mAdapter instanceof AsyncCoverFlowAdapter) {
+            // Never decode to measure, it is measured again when it arrives
+            return 0;
+        }
+
+        // Adapter provides no metadata, fall back to the image itself
+        final Bitmap child = obtainImage(actuallyPosition);
+        if (child == null) {
+            return 0;
+        }
+
+        mImageRecorder.put(actuallyPosition, child.getWidth(), child.getHeight());
+        return child.getHeight();
     }
 
     /**
@@ -483,7 +957,22 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
+        CoverFlowTrace.beginSection("CoverFlowView#onDraw");
+        final RecycleBin recycler = mRecycler;
+        if (recycler != null) {
+            recycler.beginFrame();
+        }
+        try {
+            drawCoverFlow(canvas);
+        } finally {
+            if (recycler != null) {
+                recycler.endFrame();
+            }
+            CoverFlowTrace.endSection();
+        }
+    }
 
+    private void drawCoverFlow(Canvas canvas) {
         if (mAdapter == null) {
             super.onDraw(canvas);
             return;
@@ -494,24 +983,48 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         // | Paint.FILTER_BITMAP_FLAG);
         canvas.setDrawFilter(mDrawFilter);
 
+        final long frameStart = metricsTime();
+        mFrameTransformNanos = 0;
+        mFrameDrawNanos = 0;
+        mFrameCards = 0;
+
         final float offset = mOffset;
         int i = 0;
         int mid = (int) Math.floor(offset + 0.5);
 
+        // Let the cache know which cards are near and which are coming
+        mRecycler.setWindow(getActuallyPosition(mid) + offset - mid,
+                mItemCount, offset > mLastDrawOffset ? 1
+                        : (offset < mLastDrawOffset ? -1 : 0));
+        mLastDrawOffset = offset;
+
+        if (mImageRecorder.size() > MAX_RECORDED_SIZES) {
+            mImageRecorder.retainAround(getActuallyPosition(mid),
+                    MAX_RECORDED_SIZES >> 2, mItemCount);
+        }
+
         int rightChild = (mVisibleChildCount % 2 == 0) ? (mVisibleChildCount >> 1) - 1
                 : mVisibleChildCount >> 1;
         int leftChild = mVisibleChildCount >> 1;
 
-        // draw the left children
-        int startPos = mid - leftChild;
-        for (i = startPos; i < mid; ++i) {
-            drawChild(canvas, mid, i, i - offset);
+        for (i = 0; i < mCardPositions.length; i++) {
+            mCardPositions[i] = INVALID_POSITION;
         }
 
-        // draw the right children
+        int startPos = mid - leftChild;
         int endPos = mid + rightChild;
-        for (i = endPos; i >= mid; --i) {
-            drawChild(canvas, mid, i, i - offset);
+        if (mOcclusionCulling) {
+            drawCulledCards(canvas, mid, offset, startPos, endPos);
+        } else {
+            // draw the left children
+            for (i = startPos; i < mid; ++i) {
+                drawChild(canvas, mid, i, i - offset);
+            }
+
+            // draw the right children
+            for (i = endPos; i >= mid; --i) {
+                drawChild(canvas, mid, i, i - offset);
+            }
         }
 
         //代表最上层的bitmap
@@ -521,144 +1034,608 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
         super.onDraw(canvas);
 
+        if (mMetrics != null) {
+            onFrameMeasured(frameStart);
+        }
+
         mCoverFlowListener.invalidationCompleted();
     }
 
-    protected final void drawChild(Canvas canvas, int mid, int position, float offset) {
-
-        int actuallyPosition = getActuallyPosition(position);
-
-        final Bitmap child = mAdapter.getImage(actuallyPosition);
-        final Bitmap reflection = obtainReflection(child);
-
-        //查询是否存储过bitmap的宽高度
-        int[] wAndh = mImageRecorder.get(actuallyPosition);
-        if (wAndh == null) {
-            //没有对应位置的bitmap值,设置新值
-            wAndh = new int[]{child.getWidth(), child.getHeight()};
-            mImageRecorder.put(actuallyPosition, wAndh);
-        } else {
-            wAndh[0] = child.getWidth();
-            wAndh[1] = child.getHeight();
+    /**
+     * Record the frame started at frameStart, and report every
+     * {@link #mMetricsFrameInterval} frames
+     */
+    private void onFrameMeasured(long frameStart) {
+        final CoverFlowMetrics metrics = mMetrics;
+        metrics.frameTime.record(microsSince(frameStart));
+        metrics.transformTime.record(mFrameTransformNanos / 1000);
+        metrics.drawTime.record(mFrameDrawNanos / 1000);
+        metrics.cardsDrawn.record(mFrameCards);
+
+        if (++mMetricsFrames >= mMetricsFrameInterval) {
+            mMetricsFrames = 0;
+            updateCacheMetrics();
+            mMetricsListener.onMetrics(this, metrics);
         }
+    }
 
-        if (child != null && !child.isRecycled() && canvas != null) {
-            makeChildTransformer(child, mid, position, offset);
-            canvas.drawBitmap(child, mChildTransformer, mDrawChildPaint);
-            if (reflection != null) {
-
-                canvas.drawBitmap(reflection, mReflectionTransformer,
-                        mDrawChildPaint);
-            }
+    private void updateCacheMetrics() {
+        final CoverFlowMetrics metrics = mMetrics;
+        if (mRecycler != null) {
+            metrics.bitmapCacheHitCount = mRecycler.hitCount();
+            metrics.bitmapCacheMissCount = mRecycler.missCount();
+            metrics.bitmapCacheEvictionCount = mRecycler.evictionCount();
+            metrics.recycleBinBytes = mRecycler.byteCount();
+        }
+        if (mAdapter instanceof AsyncCoverFlowAdapter) {
+            final AsyncCoverFlowAdapter adapter = (AsyncCoverFlowAdapter) mAdapter;
+            metrics.imageCacheHitCount = adapter.imageCacheHitCount();
+            metrics.imageCacheMissCount = adapter.imageCacheMissCount();
+            metrics.imageCacheEvictionCount = adapter.imageCacheEvictionCount();
         }
     }
 
     /**
-     * <ul>
-     * <li>对bitmap进行伪3d变换</li>
-     * </ul>
-     *
-     * @param child
-     * @param position
-     * @param offset
+     * @return now if metrics are collected, 0 otherwise
      */
-    private void makeChildTransformer(Bitmap child, int mid, int position, float offset) {
-        mChildTransformer.reset();
-        mReflectionTransformer.reset();
+    private long metricsTime() {
+        return mMetrics != null ? System.nanoTime() : 0;
+    }
 
-        float scale = 0;
-        //this scale make sure that each image will be smaller than the
-        //previous one
-//        if (position != mid) {
-//            scale = 1 - Math.abs(offset) * CARD_SCALE;
-//        } else {
-//            scale = 1 - Math.abs(offset) * CARD_SCALE;
-//        }
-        //缩放比例 offset 越大缩放比例越大
-        scale = 1 - Math.abs(offset) * CARD_SCALE;
-        float translateX = 0;
+    private static long microsSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
 
-        //原始bitmap占据的高度
-        final int originalChildHeight = (int) (mChildHeight - mChildHeight
-                * reflectHeightFraction - reflectGap);
+    protected final void drawChild(Canvas canvas, int mid, int position, float offset) {
+        CoverFlowTrace.beginSection("CoverFlowView#drawChild");
+        try {
+            final Card card = prepareCard(mid, position, offset);
+            if (card == null) {
+                return;
+            }
 
-        //整个view占据的高度
-        final int childTotalHeight = (int) (child.getHeight()
-                + child.getHeight() * reflectHeightFraction + reflectGap);
+            if (canvas != null) {
+                paintCard(canvas, card);
+            } else {
+                card.clear();
+            }
+        } finally {
+            CoverFlowTrace.endSection();
+        }
+    }
 
-        //原始bitmap缩放比
-        final float originalChildHeightScale = (float) originalChildHeight
-                / child.getHeight();
+    /**
+     * Draw the cards of {@link #drawCoverFlow} for occlusion culling: all of
+     * them are prepared first, then painted back to front without the parts
+     * nearer cards cover.
+     */
+    private void drawCulledCards(Canvas canvas, int mid, float offset,
+                                 int startPos, int endPos) {
+        CoverFlowTrace.beginSection("CoverFlowView#drawCulledCards");
+        try {
+            // Same order as drawChild is called in, nearer cards last
+            int count = 0;
+            for (int i = startPos; i < mid; ++i) {
+                count = addToDrawOrder(prepareCard(mid, i, i - offset), count);
+            }
+            for (int i = endPos; i >= mid; --i) {
+                count = addToDrawOrder(prepareCard(mid, i, i - offset), count);
+            }
 
-        //换算后的缩放比
-        final float childHeightScale = originalChildHeightScale * scale;
+            final boolean clipOut = canClipOut(canvas);
+            final Card[] order = mDrawOrder;
+            for (int k = 0; k < count; k++) {
+                final Card card = order[k];
+
+                // What is left of the card once nearer cards are drawn
+                card.bounds.roundOut(mTempIntRect);
+                mVisibleRegion.set(mTempIntRect);
+                int occluders = 0;
+                for (int j = k + 1; j < count; j++) {
+                    final Rect occluder = order[j].occluder;
+                    if (!occluder.isEmpty()
+                            && Rect.intersects(occluder, mTempIntRect)) {
+                        mVisibleRegion.op(occluder, Region.Op.DIFFERENCE);
+                        occluders++;
+                    }
+                }
 
-        //缩放后的bitmap的宽度(包含了非mid bitmap 通过offset -> scale -> childHeightScale)
-        final int childWidth = (int) (child.getWidth() * childHeightScale);
+                if (mVisibleRegion.isEmpty()) {
+                    // Fully covered
+                    card.clear();
+                    continue;
+                }
 
-        //最中间Bitmap的宽度  缩放比和高度保持一样
-        final int centerChildWidth = (int) (child.getWidth() * originalChildHeightScale);
+                if (occluders == 0 || !clipOut) {
+                    paintCard(canvas, card);
+                    continue;
+                }
 
-        //中间bitmap离左边的space
-        int leftSpace = ((mWidth >> 1) - mCoverFlowPadding.left)
-                - (centerChildWidth >> 1);
-        //中间bitmap离右边的space
-        int rightSpace = (((mWidth >> 1) - mCoverFlowPadding.right) - (centerChildWidth >> 1));
+                canvas.save();
+                for (int j = k + 1; j < count; j++) {
+                    final Rect occluder = order[j].occluder;
+                    if (!occluder.isEmpty()
+                            && Rect.intersects(occluder, mTempIntRect)) {
+                        canvas.clipRect(occluder, Region.Op.DIFFERENCE);
+                    }
+                }
+                paintCard(canvas, card);
+                canvas.restore();
+            }
 
-        if (offset <= 0) {//计算左边的item translateX 值  离中心越远 x值越小
-            translateX = ((float) leftSpace / mVisibleImages)
-                    * (mVisibleImages + offset) + mCoverFlowPadding.left;
-        }else {
-            translateX = mWidth - ((float) rightSpace / mVisibleImages)
-                    * (mVisibleImages - offset) - childWidth
-                    - mCoverFlowPadding.right;
+            for (int k = 0; k < count; k++) {
+                order[k] = null;
+            }
+        } finally {
+            CoverFlowTrace.endSection();
         }
+    }
 
-        float alpha = (float) 254 - Math.abs(offset) * STANDARD_ALPHA;
-
-        if (alpha < 0) {
-            alpha = 0;
-        } else if (alpha > 254) {
-            alpha = 254;
+    private int addToDrawOrder(Card card, int count) {
+        if (card != null && count < mDrawOrder.length) {
+            mDrawOrder[count++] = card;
         }
+        return count;
+    }
 
-        mDrawChildPaint.setAlpha((int) alpha);
+    /**
+     * Hardware canvases could only intersect clips before Jelly Bean MR2
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static boolean canClipOut(Canvas canvas) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+                || !canvas.isHardwareAccelerated();
+    }
 
-        mChildTransformer.preTranslate(0, -(childTotalHeight >> 1));
-        mChildTransformer.postScale(childHeightScale, childHeightScale);
+    /**
+     * Get the bitmaps of the card at given draw position and compute where
+     * they go, without drawing anything.
+     *
+     * @return card to pass to {@link #paintCard}, or null if there is nothing
+     * to draw
+     */
+    private Card prepareCard(int mid, int position, float offset) {
+        int actuallyPosition = getActuallyPosition(position);
 
-        if ((offset - (int) offset) == 0.0f) {
-            Log.e(VIEW_LOG_TAG, "offset=>" + offset + " scale=>" + childHeightScale);
+        final Bitmap child = obtainImage(actuallyPosition);
+
+        //查询是否存储过bitmap的宽高度
+        final int sizeIndex = mImageRecorder.indexOf(actuallyPosition);
+
+        final Card card = cardOf(mid, position, actuallyPosition);
+        card.clear();
+
+        if (child == null || child.isRecycled()) {
+            // Image is still loading, draw a placeholder of the last known
+            // size, or a square one
+            final int placeholderHeight = sizeIndex >= 0
+                    ? mImageRecorder.heightAt(sizeIndex)
+                    : CoverFlowMath.imageHeight(mChildHeight,
+                            reflectHeightFraction, reflectGap);
+            final int placeholderWidth = sizeIndex >= 0
+                    ? mImageRecorder.widthAt(sizeIndex) : placeholderHeight;
+            if (placeholderWidth <= 0 || placeholderHeight <= 0) {
+                return null;
+            }
+
+            final long transformStart = metricsTime();
+            makeChildTransformer(null, placeholderWidth, placeholderHeight,
+                    mid, position, offset, true);
+            recordTransformTime(transformStart);
+
+            card.matrix.set(mChildTransformer);
+            card.width = placeholderWidth;
+            card.height = placeholderHeight;
+            card.alpha = mDrawChildPaint.getAlpha();
+            recordCardBounds(card, placeholderWidth, placeholderHeight, true);
+            return card;
+        }
+
+        //没有对应位置的bitmap值,设置新值
+        mImageRecorder.put(actuallyPosition, child.getWidth(), child.getHeight());
+
+        if (mReflectionMode == ReflectionMode.COMPOSITE) {
+            final Bitmap composite = obtainComposite(child, actuallyPosition);
+            if (composite != null) {
+                final long transformStart = metricsTime();
+                makeChildTransformer(child, child.getWidth(), child.getHeight(),
+                        mid, position, offset, false);
+                recordTransformTime(transformStart);
+
+                // Map composite pixels onto image pixels, then as the image
+                card.matrix.set(mChildTransformer);
+                card.matrix.preScale(
+                        (float) child.getWidth() / composite.getWidth(),
+                        (float) child.getHeight() / mImageTargetHeight);
+                card.bitmap = composite;
+                card.alpha = mDrawChildPaint.getAlpha();
+                card.bounds.set(0, 0, composite.getWidth(), composite.getHeight());
+                card.matrix.mapRect(card.bounds);
+                recordOccluder(card, child);
+                return card;
+            }
+        }
+
+        final Bitmap reflection = mReflectionMode == ReflectionMode.BITMAP
+                ? obtainReflection(child, actuallyPosition) : null;
+
+        final long transformStart = metricsTime();
+        makeChildTransformer(child, child.getWidth(), child.getHeight(),
+                mid, position, offset, true);
+        recordTransformTime(transformStart);
+
+        card.alpha = mDrawChildPaint.getAlpha();
+        card.matrix.set(mChildTransformer);
+        final Bitmap mipmap = obtainMipmap(child, actuallyPosition);
+        if (mipmap != null) {
+            // Map mipmap pixels onto image pixels, then as the image
+            card.matrix.preScale(
+                    (float) child.getWidth() / mipmap.getWidth(),
+                    (float) child.getHeight() / mipmap.getHeight());
+            card.bitmap = mipmap;
+        } else {
+            card.bitmap = child;
+        }
+
+        if (reflection != null) {
+            card.reflection = reflection;
+            card.reflectionMatrix.set(mReflectionTransformer);
+            final int reflectionHeight = (int) (child.getHeight()
+                    * reflectHeightFraction);
+            if (reflection.getWidth() != child.getWidth()
+                    || reflection.getHeight() != reflectionHeight) {
+                // Built at lower resolution, scale up to the image
+                card.reflectionMatrix.preScale(
+                        (float) child.getWidth() / reflection.getWidth(),
+                        (float) reflectionHeight / reflection.getHeight());
+            }
+        } else if (mReflectionMode != ReflectionMode.BITMAP
+                && reflectHeightFraction > 0) {
+            // Also while the composite of child is being built
+            card.shaderImage = child;
+            card.reflectionMatrix.set(mReflectionTransformer);
+        }
+
+        recordCardBounds(card, child.getWidth(), child.getHeight(),
+                reflectHeightFraction > 0);
+        recordOccluder(card, child);
+        return card;
+    }
+
+    /**
+     * Draw a card filled by {@link #prepareCard}. Cards which became fully
+     * transparent are skipped.
+     */
+    private void paintCard(Canvas canvas, Card card) {
+        if (card.alpha <= 0) {
+            card.clear();
+            return;
+        }
+
+        final long drawStart = metricsTime();
+        mDrawChildPaint.setAlpha(card.alpha);
+
+        if (card.bitmap == null) {
+            mPlaceholderPaint.setAlpha(card.alpha);
+            canvas.save();
+            canvas.concat(card.matrix);
+            canvas.drawRect(0, 0, card.width, card.height, mPlaceholderPaint);
+            canvas.restore();
+        } else {
+            canvas.drawBitmap(card.bitmap, card.matrix, mDrawChildPaint);
+        }
+
+        if (card.reflection != null) {
+            canvas.drawBitmap(card.reflection, card.reflectionMatrix,
+                    mDrawChildPaint);
+        } else if (card.shaderImage != null) {
+            drawShaderReflection(canvas, card.shaderImage, card.reflectionMatrix);
+        }
+
+        recordDrawTime(drawStart);
+        card.clear();
+    }
+
+    private void recordTransformTime(long transformStart) {
+        if (mMetrics != null) {
+            mFrameTransformNanos += System.nanoTime() - transformStart;
+        }
+    }
+
+    /**
+     * Add the card drawn from drawStart on to the metrics of the frame
+     */
+    private void recordDrawTime(long drawStart) {
+        if (mMetrics != null) {
+            mFrameDrawNanos += System.nanoTime() - drawStart;
+            mFrameCards++;
+        }
+    }
+
+    /**
+     * Draw reflection of image straight from its pixels, through matrix.
+     * Output is the same as the bitmap made by
+     * {@link BitmapUtils#createReflectedBitmap(Bitmap, float)}.
+     */
+    private void drawShaderReflection(Canvas canvas, Bitmap image, Matrix matrix) {
+        ReflectionShader reflectionShader = mReflectionShaders.get(image);
+        if (reflectionShader == null
+                || reflectionShader.fraction != reflectHeightFraction
+                || reflectionShader.srcHeight != image.getHeight()) {
+            reflectionShader = new ReflectionShader(image, reflectHeightFraction);
+            mReflectionShaders.put(image, reflectionShader);
+        }
+
+        mReflectionPaint.setShader(reflectionShader.shader);
+        mReflectionPaint.setAlpha(mDrawChildPaint.getAlpha());
+
+        canvas.save();
+        canvas.concat(matrix);
+        canvas.drawRect(0, 0, image.getWidth(), reflectionShader.height,
+                mReflectionPaint);
+        canvas.restore();
+
+        mReflectionPaint.setShader(null);
+    }
+
+    /**
+     * Get image of given adapter position, sized for the card box. For
+     * {@link AsyncCoverFlowAdapter} this never blocks, a background decode is
+     * started and null is returned if the image is not in memory yet.
+     */
+    private Bitmap obtainImage(int actuallyPosition) {
+        CoverFlowTrace.beginSection("CoverFlowAdapter#getImage");
+        try {
+            if (mAdapter instanceof AsyncCoverFlowAdapter) {
+                final AsyncCoverFlowAdapter adapter = (AsyncCoverFlowAdapter) mAdapter;
+                final Bitmap image = adapter.getImage(actuallyPosition);
+                if (image == null) {
+                    adapter.loadImage(actuallyPosition, mImageTargetWidth,
+                            mImageTargetHeight, mImageLoadCallback);
+                }
+                return image;
+            }
+
+            return mAdapter.getImage(actuallyPosition, mImageTargetWidth,
+                    mImageTargetHeight);
+        } finally {
+            CoverFlowTrace.endSection();
+        }
+    }
+
+    /**
+     * Set bounds of card from {@link #makeChildTransformer} of a card of given
+     * size.
+     */
+    private void recordCardBounds(Card card, int childWidth, int childHeight,
+                                  boolean reflection) {
+        final RectF bounds = card.bounds;
+        bounds.set(0, 0, childWidth, childHeight);
+        mChildTransformer.mapRect(bounds);
+
+        if (reflection && reflectHeightFraction > 0) {
+            mTempRect.set(0, 0, childWidth, childHeight * reflectHeightFraction);
+            mReflectionTransformer.mapRect(mTempRect);
+            bounds.union(mTempRect);
+        }
+    }
+
+    /**
+     * Set what card hides of the cards behind it, when culling occluded
+     * cards: the image drawn by {@link #mChildTransformer}, if it is drawn
+     * fully opaque, has no transparent pixels and stays a rectangle on
+     * screen.
+     */
+    private void recordOccluder(Card card, Bitmap child) {
+        if (!mOcclusionCulling || card.alpha < 255
+                || mDrawChildPaint.getColorFilter() != null
+                || child.hasAlpha() || !mChildTransformer.rectStaysRect()) {
+            return;
         }
 
-        // if actually child height is larger or smaller than original child
-        // height
-        // need to change translate distance of y-axis
-        float adjustedChildTranslateY = 0;
-        if (childHeightScale != 1) {
-            adjustedChildTranslateY = (mChildHeight - childTotalHeight) >> 1;
+        mTempRect.set(0, 0, child.getWidth(), child.getHeight());
+        mChildTransformer.mapRect(mTempRect);
+        // Inside the rect, so edge pixels blended with what is behind are
+        // still drawn under it
+        card.occluder.set((int) Math.ceil(mTempRect.left),
+                (int) Math.ceil(mTempRect.top),
+                (int) Math.floor(mTempRect.right),
+                (int) Math.floor(mTempRect.bottom));
+        if (card.occluder.isEmpty()) {
+            card.occluder.setEmpty();
         }
+    }
+
+    /**
+     * @return card of given draw position, remembered as drawn for
+     * {@link #invalidateCard}
+     */
+    private Card cardOf(int mid, int position, int actuallyPosition) {
+        final int slot = position - (mid - (mVisibleChildCount >> 1));
+        if (slot < 0 || slot >= mCards.length) {
+            return mScratchCard;
+        }
+
+        mCardPositions[slot] = actuallyPosition;
+        return mCards[slot];
+    }
+
+    private boolean isCardVisible(int actuallyPosition) {
+        for (int i = 0; i < mCardPositions.length; i++) {
+            if (mCardPositions[i] == actuallyPosition) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Load images and reflections of the cards which will come into view
+     * while offset moves from fromOffset to toOffset, in the order they will
+     * appear. If there are too many, the first ones and the ones around
+     * toOffset are loaded. Images are only loaded ahead by an
+     * {@link AsyncCoverFlowAdapter}, other adapters are asked for the ones
+     * they hold with {@link CoverFlowAdapter#peekImage(int)}.
+     */
+    private void prefetch(float fromOffset, float toOffset) {
+        if (mAdapter == null || mRecycler == null || mVisibleChildCount == 0) {
+            return;
+        }
+
+        final int fromMid = (int) Math.floor(fromOffset + 0.5);
+        final int toMid = (int) Math.floor(toOffset + 0.5);
+        final int entering = Math.abs(toMid - fromMid);
+        if (entering == 0) {
+            return;
+        }
+
+        // The card entering when center moves to mid is at the leading edge
+        final int step = toMid > fromMid ? 1 : -1;
+        final int edge = step > 0 ? ((mVisibleChildCount % 2 == 0)
+                ? (mVisibleChildCount >> 1) - 1 : mVisibleChildCount >> 1)
+                : -(mVisibleChildCount >> 1);
+
+        // Never more than MAX_PREFETCH, even when more cards are visible
+        final int destinationCount = Math.min(MAX_PREFETCH,
+                Math.min(entering, mVisibleChildCount));
+        final int leadingCount = Math.min(entering - destinationCount,
+                MAX_PREFETCH - destinationCount);
+
+        for (int i = 1; i <= leadingCount; i++) {
+            prefetchPosition(getActuallyPosition(fromMid + step * i + edge));
+        }
+        for (int i = entering - destinationCount + 1; i <= entering; i++) {
+            prefetchPosition(getActuallyPosition(fromMid + step * i + edge));
+        }
+    }
+
+    private void prefetchPosition(int actuallyPosition) {
+        if (mAdapter instanceof AsyncCoverFlowAdapter) {
+            final AsyncCoverFlowAdapter adapter = (AsyncCoverFlowAdapter) mAdapter;
+            final Bitmap image = adapter.getImage(actuallyPosition);
+            if (image == null) {
+                // Reflection follows in the callback
+                adapter.loadImage(actuallyPosition, mImageTargetWidth,
+                        mImageTargetHeight, mImageLoadCallback);
+            } else {
+                prefetchReflection(image, image, actuallyPosition);
+            }
+            return;
+        }
+
+        // Loading an image may block, only reflections of images the adapter
+        // already holds are built ahead
+        final Bitmap image = mAdapter.peekImage(actuallyPosition);
+        if (image != null) {
+            mImageRecorder.put(actuallyPosition, image.getWidth(), image.getHeight());
+            prefetchReflection(image, image, actuallyPosition);
+        }
+    }
+
+    /**
+     * Get the reflection or composite of image ready, built from source: image
+     * itself, or its software original if image is a hardware bitmap. Without
+     * async reflections only the latter is built here, it cannot be read
+     * later.
+     */
+    private void prefetchReflection(Bitmap image, Bitmap source,
+                                    int actuallyPosition) {
+        if (image.isRecycled() || (!mAsyncReflection && source == image)) {
+            return;
+        }
+
+        final int variant;
+        if (mReflectionMode == ReflectionMode.COMPOSITE) {
+            if (mImageTargetHeight <= 0) {
+                return;
+            }
+            variant = CacheKey.VARIANT_COMPOSITE;
+        } else if (mReflectionMode == ReflectionMode.BITMAP
+                && reflectHeightFraction > 0) {
+            variant = CacheKey.VARIANT_REFLECTION;
+        } else {
+            return;
+        }
+
+        final CacheKey key = mLookupKey.set(mAdapter, actuallyPosition, image,
+                variant);
+        if (mRecycler.getCachedBitmap(key, actuallyPosition) != null) {
+            return;
+        }
+
+        if (mAsyncReflection) {
+            mBitmapWorker.request(key, source, actuallyPosition);
+        } else {
+            buildDerivedBitmap(key, source, actuallyPosition);
+        }
+    }
+
+    /**
+     * Redraw only the card which shows given adapter position, if it is on
+     * screen.
+     */
+    private void invalidateCard(int actuallyPosition) {
+        for (int i = 0; i < mCardPositions.length; i++) {
+            if (mCardPositions[i] == actuallyPosition) {
+                final RectF bounds = mCardBounds[i];
+                invalidate((int) Math.floor(bounds.left),
+                        (int) Math.floor(bounds.top),
+                        (int) Math.ceil(bounds.right),
+                        (int) Math.ceil(bounds.bottom));
+            }
+        }
+    }
+
+    /**
+     * <ul>
+     * <li>对bitmap进行伪3d变换</li>
+     * </ul>
+     *
+     * @param child       bitmap to draw, null when drawing a placeholder
+     * @param childWidth  width of the bitmap, or of the placeholder
+     * @param childHeight height of the bitmap, or of the placeholder
+     * @param position
+     * @param offset
+     * @param reflection  also compute {@link #mReflectionTransformer}, not
+     *                    needed for a composite
+     */
+    private void makeChildTransformer(Bitmap child, int childWidth, int childHeight,
+                                      int mid, int position, float offset,
+                                      boolean reflection) {
+        final CoverFlowGeometry geometry = mGeometry;
+        geometry.compute(offset, childWidth, childHeight);
 
-        mChildTransformer.postTranslate(translateX, mChildTranslateY
-                + adjustedChildTranslateY);
+        mDrawChildPaint.setAlpha(geometry.outAlpha);
 
-         Log.i(VIEW_LOG_TAG, "position= " + position + " mChildTranslateY= "
-         + mChildTranslateY + adjustedChildTranslateY);
+        final float childHeightScale = geometry.outChildScale;
+        final int halfTotalHeight = geometry.outHalfTotalHeight;
+        mChildScale = childHeightScale;
+
+        // Scale around the vertical center of image and reflection, then move
+        // into place
+        mChildTransformer.setScale(childHeightScale, childHeightScale);
+        mChildTransformer.postTranslate(geometry.outTranslateX,
+                geometry.outChildTranslateY - halfTotalHeight * childHeightScale);
 
         //下面方式能实现去除 childTotalHeight >> 1 后的效果
 //        mChildTransformer.postTranslate(0, 100 * Math.abs(offset));
         getCustomTransformMatrix(mChildTransformer, mDrawChildPaint, child,
                 position, offset);
 
-        mChildTransformer.postTranslate(0, (childTotalHeight >> 1));
+        mChildTransformer.postTranslate(0, halfTotalHeight);
+
+        if (!reflection) {
+            return;
+        }
 
-        mReflectionTransformer.preTranslate(0, -(childTotalHeight >> 1));
-        mReflectionTransformer.postScale(childHeightScale, childHeightScale);
-        mReflectionTransformer.postTranslate(translateX, mReflectionTranslateY
-                * scale + adjustedChildTranslateY);
+        mReflectionTransformer.setScale(childHeightScale, childHeightScale);
+        mReflectionTransformer.postTranslate(geometry.outTranslateX,
+                geometry.outReflectionTranslateY - halfTotalHeight
+                        * childHeightScale);
         getCustomTransformMatrix(mReflectionTransformer, mDrawChildPaint,
                 child, position, offset);
-        mReflectionTransformer.postTranslate(0, (childTotalHeight >> 1));
+        mReflectionTransformer.postTranslate(0, halfTotalHeight);
     }
 
     /**
@@ -668,7 +1645,8 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
      * </ul>
      *
      * @param mDrawChildPaint paint, user can set alpha
-     * @param child           bitmap to draw
+     * @param child           bitmap to draw, null while the image of an
+     *                        {@link AsyncCoverFlowAdapter} is loading
      * @param position
      * @param offset          offset to center(zero)
      */
@@ -691,22 +1669,30 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
     private void imageOnTop(int position) {
         mTopImageIndex = position;
 
-        final int[] wAndh = mImageRecorder.get(position);
+        final int sizeIndex = mImageRecorder.indexOf(position);
+        if (sizeIndex < 0) {
+            // Image not loaded yet, it will be reported when it is drawn
+            return;
+        }
 
-        final int heightInView = (int) (mChildHeight - mChildHeight
-                * reflectHeightFraction - reflectGap);
-        final float scale = (float) heightInView / wAndh[1];
-        final int widthInView = (int) (wAndh[0] * scale);
+        final int heightInView = CoverFlowMath.imageHeight(mChildHeight,
+                reflectHeightFraction, reflectGap);
+        final float scale = (float) heightInView / mImageRecorder.heightAt(sizeIndex);
+        final int widthInView = (int) (mImageRecorder.widthAt(sizeIndex) * scale);
 
-        Log.e(VIEW_LOG_TAG, "height ==>" + heightInView + " width ==>"
-                + widthInView);
+        if (CoverFlowLog.isLoggable()) {
+            CoverFlowLog.d(VIEW_LOG_TAG, "height ==>" + heightInView
+                    + " width ==>" + widthInView);
+        }
 
         mTouchRect.left = (mWidth >> 1) - (widthInView >> 1);
         mTouchRect.top = mChildTranslateY;
         mTouchRect.right = mTouchRect.left + widthInView;
         mTouchRect.bottom = mTouchRect.top + heightInView;
 
-        Log.e(VIEW_LOG_TAG, "rect==>" + mTouchRect);
+        if (CoverFlowLog.isLoggable()) {
+            CoverFlowLog.d(VIEW_LOG_TAG, "rect==>" + mTouchRect);
+        }
 
         if (mCoverFlowListener != null) {
             mCoverFlowListener.imageOnTop(this, position, mTouchRect.left,
@@ -724,10 +1710,6 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         int action = event.getAction();
         switch (action) {
             case MotionEvent.ACTION_DOWN:
-                if (mScroller.computeScrollOffset()) {
-                    mScroller.abortAnimation();
-                    invalidate();
-                }
                 //先Remove 再重新触发
                 stopLongClick();
                 triggleLongClick(event.getX(), event.getY());
@@ -775,11 +1757,11 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
      */
     private void touchBegan(MotionEvent event) {
         endAnimation();
+        rebaseOffset();
 
         float x = event.getX();
         mTouchStartX = x;
         mTouchStartY = event.getY();
-        mStartTime = AnimationUtils.currentAnimationTimeMillis();
         mStartOffset = mOffset;
 
         mTouchMoved = false;
@@ -787,8 +1769,9 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         // ????什么算法????
         mTouchStartPos = (x / mWidth) * MOVE_POS_MULTIPLE - 5;
         mTouchStartPos /= 2;
-        Log.e(VIEW_LOG_TAG,
-                " TouchStartPos ==>" + mTouchStartPos);
+        if (CoverFlowLog.isLoggable()) {
+            CoverFlowLog.d(VIEW_LOG_TAG, " TouchStartPos ==>" + mTouchStartPos);
+        }
 
         mVelocity = VelocityTracker.obtain();
         mVelocity.addMovement(event);
@@ -840,8 +1823,10 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
 
             startAnimation(-speed);
         } else {
-            Log.e(VIEW_LOG_TAG,
-                    " touch ==>" + event.getX() + " , " + event.getY());
+            if (CoverFlowLog.isLoggable()) {
+                CoverFlowLog.d(VIEW_LOG_TAG,
+                        " touch ==>" + event.getX() + " , " + event.getY());
+            }
             if (mTouchRect != null) {
                 if (mTouchRect.contains(event.getX(), event.getY())
                         && mCoverFlowListener != null && topImageClickEnable
@@ -858,65 +1843,175 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
     }
 
     private void startAnimation(double speed) {
-        if (mAnimationRunnable != null)
+        if (mAnimation == ANIMATION_FLING)
             return;
 
-        double delta = speed * speed / (FRICTION * 2);
-        if (speed < 0)
-            delta = -delta;
-
-        double nearest = mStartOffset + delta;
-        nearest = Math.floor(nearest + 0.5);
+        startMotion(ANIMATION_FLING, mStartOffset,
+                mPhysics.getTargetOffset(mStartOffset, (float) speed));
+    }
 
-        mStartSpeed = (float) Math.sqrt(Math.abs(nearest - mStartOffset)
-                * FRICTION * 2);
-        if (nearest < mStartOffset)
-            mStartSpeed = -mStartSpeed;
+    /**
+     * Animate from given offset to target with {@link #mPhysics}. The whole
+     * motion is known up front, images at target are loaded right away.
+     */
+    private void startMotion(int animation, float from, float target) {
+        mAnimationFrom = from;
+        mAnimationTarget = target;
+        mAnimationVelocity = mPhysics.getVelocityForTarget(from, target);
+        mAnimationDuration = mPhysics.getDuration(from, mAnimationVelocity);
 
-        mDuration = Math.abs(mStartSpeed / FRICTION);
-        mStartTime = AnimationUtils.currentAnimationTimeMillis();
+        prefetch(from, target);
 
-        mAnimationRunnable = new Runnable() {
-            @Override
-            public void run() {
-                driveAnimation();
-            }
-        };
-        post(mAnimationRunnable);
+        mAnimation = animation;
+        mAnimationStartNanos = System.nanoTime();
+        mFrameCallback.schedule();
     }
 
-    private void driveAnimation() {
-        float elapsed = (AnimationUtils.currentAnimationTimeMillis() - mStartTime) / 1000.0f;
-        if (elapsed >= mDuration)
-            endAnimation();
-        else {
-            updateAnimationAtElapsed(elapsed);
-            post(mAnimationRunnable);
+    /**
+     * Step the running animation to frameTimeNanos, called once per displayed
+     * frame by {@link #mFrameCallback}.
+     */
+    private void onAnimationFrame(long frameTimeNanos) {
+        float elapsed = (frameTimeNanos - mAnimationStartNanos) / 1e9f;
+        if (elapsed < 0) {
+            // Vsync of the first frame came before the animation started
+            elapsed = 0;
+        }
+
+        if (mAnimation == ANIMATION_NONE) {
+            return;
+        }
+
+        if (elapsed >= mAnimationDuration) {
+            mOffset = mAnimationTarget;
+            mAnimation = ANIMATION_NONE;
+            rebaseOffset();
+            invalidate();
+            return;
         }
+
+        mOffset = mPhysics.getOffset(mAnimationFrom, mAnimationVelocity, elapsed);
+        invalidate();
+
+        mFrameCallback.schedule();
     }
 
+    /**
+     * Stop the running animation. A fling stops on the nearest image, a
+     * selection where it is.
+     */
     private void endAnimation() {
-        if (mAnimationRunnable != null) {
+        if (mAnimation == ANIMATION_NONE) {
+            return;
+        }
+
+        if (mAnimation == ANIMATION_FLING) {
             mOffset = (float) Math.floor(mOffset + 0.5);
+        }
 
-            invalidate();
+        invalidate();
+
+        mAnimation = ANIMATION_NONE;
+        mFrameCallback.cancel();
+        rebaseOffset();
+    }
+
+    /**
+     * Move the whole cards of {@link #mOffset} into {@link #mOffsetBase},
+     * leaving only the fraction. A running animation is moved along, it keeps
+     * heading for the same card.
+     */
+    private void rebaseOffset() {
+        if (mItemCount <= 0) {
+            return;
+        }
 
-            removeCallbacks(mAnimationRunnable);
-            mAnimationRunnable = null;
+        final int whole = (int) Math.floor(mOffset);
+        mOffsetBase = CoverFlowMath.wrapPosition(mOffsetBase + whole, mItemCount);
+        mOffset -= whole;
+        mLastDrawOffset -= whole;
+        if (mAnimation != ANIMATION_NONE) {
+            mAnimationFrom -= whole;
+            mAnimationTarget -= whole;
         }
     }
 
-    private void updateAnimationAtElapsed(float elapsed) {
-        if (elapsed > mDuration)
-            elapsed = mDuration;
+    /**
+     * @return draw index of the card in the center
+     */
+    private int getCenter() {
+        return (int) Math.floor(mOffset + 0.5);
+    }
+
+    /**
+     * Items were inserted, removed or moved: keep the card which was in the
+     * center there, now at adapter position center.
+     */
+    private void onPositionsShifted(int center, int nextItemCount) {
+        mItemCount = nextItemCount;
+        mOffsetBase = CoverFlowMath.wrapPosition(center - getCenter()
+                - mVisibleImages, mItemCount);
+
+        // Positions of pending reflections are stale
+        mBitmapWorker.cancel();
+        mTopImageIndex = INVALID_POSITION;
+
+        if (!remeasureIfNeeded()) {
+            invalidate();
+        }
+    }
 
-        float delta = Math.abs(mStartSpeed) * elapsed - FRICTION * elapsed
-                * elapsed / 2;
-        if (mStartSpeed < 0)
-            delta = -delta;
+    /**
+     * Cards in view changed, measure again only if the tallest of them is no
+     * longer as tall. A card whose size is still unknown does not count, if
+     * it turns out taller it is measured again when its image arrives.
+     *
+     * @return true if a layout was requested
+     */
+    private boolean remeasureIfNeeded() {
+        final int maxChildTotalHeight = getMaxChildTotalHeight(getCenter(),
+                mVisibleChildCount);
+        if (maxChildTotalHeight == mMaxChildTotalHeight
+                || (maxChildTotalHeight < mMaxChildTotalHeight
+                && mHasUnknownHeight)) {
+            return false;
+        }
 
-        mOffset = mStartOffset + delta;
+        mDataSetChanged = true;
+        requestLayout();
         invalidate();
+        return true;
+    }
+
+    /**
+     * Height of the tallest card, with its reflection, among visibleCount
+     * cards around mid. Sets {@link #mHasUnknownHeight} if some of them are
+     * still loading.
+     */
+    private int getMaxChildTotalHeight(int mid, int visibleCount) {
+        int maxChildTotalHeight = 0;
+        mHasUnknownHeight = false;
+
+        //找到起始绘制的item
+        final int startPos = mid - (visibleCount >> 1);
+
+        for (int i = startPos; i < visibleCount + startPos; ++i) {
+            final int childHeight = obtainImageHeight(getActuallyPosition(i));
+            if (childHeight <= 0) {
+                // Still loading, we will measure again when it arrives
+                mHasUnknownHeight = true;
+                continue;
+            }
+            //item高度 = bitmap高度 + bitmap投影高度 + 投影与原图间隔的高度
+            final int childTotalHeight = (int) (childHeight + childHeight
+                    * reflectHeightFraction + reflectGap);
+
+            //计算保存adapter中图片占用最大的高度值
+            maxChildTotalHeight = (maxChildTotalHeight < childTotalHeight) ? childTotalHeight
+                    : maxChildTotalHeight;
+        }
+
+        return maxChildTotalHeight;
     }
 
     /**
@@ -933,46 +2028,138 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         int max = mAdapter.getCount();
 
         //将实际绘制的坐标 转换成 adapter 中的实际的坐标
-        position += mVisibleImages;
-        //保证左右的循环滚动 position -+ max
-        while (position < 0 || position >= max) {
-            if (position < 0) {
-                position += max;
-            } else if (position >= max) {
-                position -= max;
-            }
+        return CoverFlowMath.wrapPosition(position + mVisibleImages + mOffsetBase, max);
+    }
+
+    /**
+     * Get the smallest mipmap level of src which is still at least as large
+     * as the card it is drawn on, call after {@link #makeChildTransformer}.
+     * Levels are built in background, until then src itself is used.
+     *
+     * @return mipmap level, or null if src should be drawn
+     */
+    private Bitmap obtainMipmap(Bitmap src, int actuallyPosition) {
+        if (!mMipmapEnabled || BitmapUtils.isHardware(src)) {
+            // Hardware bitmaps are filtered by the GPU
+            return null;
+        }
+
+        final int level = CoverFlowMath.mipmapLevel(mChildScale);
+        if (level == 0) {
+            return null;
         }
 
-        return position;
+        final CacheKey key = mLookupKey.set(mAdapter, actuallyPosition, src,
+                CacheKey.mipmapVariant(level));
+        final Bitmap mipmap = mRecycler.getCachedBitmap(key, actuallyPosition);
+        if (mipmap != null && !mipmap.isRecycled()) {
+            return mipmap;
+        }
+
+        mBitmapWorker.request(key, src, actuallyPosition);
+        return null;
     }
 
     /**
      * 获取倒影image Bitmap,将src Bitmap Lru缓存起来以备使用
      * @param src
-     * @return
+     * @param actuallyPosition position of src in adapter
+     * @return reflection, or null if there is none or it is still being built
+     * in background
      */
-    private Bitmap obtainReflection(Bitmap src) {
+    private Bitmap obtainReflection(Bitmap src, int actuallyPosition) {
         if (reflectHeightFraction <= 0) {
             return null;
         }
 
-        Bitmap reflection = mRecycler.getCachedReflectiuon(src);
+        CoverFlowTrace.beginSection("CoverFlowView#obtainReflection");
+        try {
+            final CacheKey key = mLookupKey.set(mAdapter, actuallyPosition, src,
+                    CacheKey.VARIANT_REFLECTION);
+            Bitmap reflection = mRecycler.getCachedBitmap(key, actuallyPosition);
+
+            if (reflection == null || reflection.isRecycled()) {
+                //如果倒影bitmap不存在 先移除原始的view
+                mRecycler.removeBitmapCache(key, actuallyPosition);
+
+                if (mAsyncReflection) {
+                    // Draw nothing until the worker hands it to RecycleBin
+                    mBitmapWorker.request(key, src, actuallyPosition);
+                    return null;
+                }
+
+                return buildDerivedBitmap(key, src, actuallyPosition);
+            }
+
+            return reflection;
+        } finally {
+            CoverFlowTrace.endSection();
+        }
+    }
 
-        if (reflection == null || reflection.isRecycled()) {
-            //如果倒影bitmap不存在 先移除原始的view
-            mRecycler.removeReflectionCache(src);
+    /**
+     * Get image, gap and reflection of src baked into one bitmap at display
+     * resolution, for {@link ReflectionMode#COMPOSITE}
+     *
+     * @return composite, or null if it is still being built in background
+     */
+    private Bitmap obtainComposite(Bitmap src, int actuallyPosition) {
+        if (mImageTargetHeight <= 0) {
+            // Not measured yet
+            return null;
+        }
 
-            reflection = BitmapUtils.createReflectedBitmap(src,
-                    reflectHeightFraction);
+        CoverFlowTrace.beginSection("CoverFlowView#obtainComposite");
+        try {
+            final CacheKey key = mLookupKey.set(mAdapter, actuallyPosition, src,
+                    CacheKey.VARIANT_COMPOSITE);
+            Bitmap composite = mRecycler.getCachedBitmap(key, actuallyPosition);
+            if (composite != null && !composite.isRecycled()) {
+                return composite;
+            }
 
-            if (reflection != null) {
-                mRecycler.buildReflectionCache(src, reflection);
+            mRecycler.removeBitmapCache(key, actuallyPosition);
 
-                return reflection;
+            if (mAsyncReflection) {
+                mBitmapWorker.request(key, src, actuallyPosition);
+                return null;
             }
+
+            return buildDerivedBitmap(key, src, actuallyPosition);
+        } finally {
+            CoverFlowTrace.endSection();
+        }
+    }
+
+    /**
+     * Build the reflection or composite of key from source on this thread,
+     * and cache it.
+     *
+     * @return built bitmap, or null if source is empty
+     */
+    private Bitmap buildDerivedBitmap(CacheKey key, Bitmap source,
+                                      int actuallyPosition) {
+        final long buildStart = metricsTime();
+        final BitmapPool pool = mRecycler.getBitmapPool(actuallyPosition);
+        Bitmap result;
+        if (key.variant == CacheKey.VARIANT_COMPOSITE) {
+            result = BitmapUtils.createCompositeBitmap(source,
+                    mImageTargetHeight, reflectGap, reflectHeightFraction, pool);
+        } else {
+            result = BitmapUtils.createReflectedBitmap(source,
+                    reflectHeightFraction, pool, getReflectionSampleSize());
+        }
+        if (isHardwareMemoryMode()) {
+            result = BitmapUtils.toHardware(result, pool);
+        }
+        if (mMetrics != null) {
+            mMetrics.reflectionBuildTime.record(microsSince(buildStart));
         }
 
-        return reflection;
+        if (result != null) {
+            mRecycler.buildBitmapCache(key, result, actuallyPosition);
+        }
+        return result;
     }
 
     public void setVisibleImage(int count) {
@@ -987,24 +2174,185 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         }
 
         mVisibleImages = count / 2;
-        STANDARD_ALPHA = (255 - ALPHA_DATUM) / mVisibleImages;
+        mRequestedVisibleImages = mVisibleImages;
+        STANDARD_ALPHA = CoverFlowMath.alphaStep(mVisibleImages);
+        requestMeasure();
     }
 
     public void setCoverFlowGravity(CoverFlowGravity gravity) {
         mGravity = gravity;
+        requestMeasure();
     }
 
     public void setCoverFlowLayoutMode(CoverFlowLayoutMode mode) {
         mLayoutMode = mode;
+        requestMeasure();
     }
 
-    public void setReflectionHeight(int fraction) {
-        if (fraction < 0)
-            fraction = 0;
+    /**
+     * Drop the cached measurement after a setting affecting card size changed
+     */
+    private void requestMeasure() {
+        mDataSetChanged = true;
+        requestLayout();
+    }
+
+    public void setReflectionHeight(int fraction) {
+        if (fraction < 0)
+            fraction = 0;
         else if (fraction > 100)
             fraction = 100;
 
-        reflectHeightFraction = fraction;
+        // Same as the reflectionHeight attribute, fraction is a percentage
+        reflectHeightFraction = fraction / 100f;
+        requestMeasure();
+
+        // Reflections are keyed on the item only, drop those of old height
+        if (mBitmapWorker != null) {
+            mBitmapWorker.cancel();
+        }
+        if (mRecycler != null) {
+            mRecycler.removeVariant(CacheKey.VARIANT_REFLECTION);
+            mRecycler.removeVariant(CacheKey.VARIANT_COMPOSITE);
+        }
+    }
+
+    /**
+     * Build reflections on a background thread (the default), cards are drawn
+     * without reflection until theirs is ready. If disabled, reflections are
+     * built inside onDraw.
+     */
+    public void setAsyncReflectionEnabled(boolean enabled) {
+        mAsyncReflection = enabled;
+    }
+
+    /**
+     * Change how reflections are rendered. Cached bitmaps of the previous
+     * mode are released.
+     */
+    public void setReflectionMode(ReflectionMode mode) {
+        if (mode == null || mode == mReflectionMode) {
+            return;
+        }
+
+        mReflectionMode = mode;
+
+        if (mBitmapWorker != null) {
+            mBitmapWorker.cancel();
+        }
+        if (mRecycler != null) {
+            if (mode != ReflectionMode.BITMAP) {
+                mRecycler.removeVariant(CacheKey.VARIANT_REFLECTION);
+            }
+            if (mode != ReflectionMode.COMPOSITE) {
+                mRecycler.removeVariant(CacheKey.VARIANT_COMPOSITE);
+            }
+        }
+        if (mode == ReflectionMode.BITMAP) {
+            mReflectionShaders.evictAll();
+        }
+
+        invalidate();
+    }
+
+    public ReflectionMode getReflectionMode() {
+        return mReflectionMode;
+    }
+
+    /**
+     * Choose how much memory bitmaps take, see {@link MemoryMode}. The default
+     * is {@link MemoryMode#NORMAL}. Cached reflections are built again at the
+     * new resolution. Images decoded already are kept as they are.
+     */
+    public void setMemoryMode(MemoryMode mode) {
+        if (mode == null || mode == mMemoryMode) {
+            return;
+        }
+
+        mMemoryMode = mode;
+
+        if (mBitmapWorker != null) {
+            mBitmapWorker.cancel();
+        }
+        if (mRecycler != null) {
+            mRecycler.removeVariant(CacheKey.VARIANT_REFLECTION);
+            mRecycler.removeVariant(CacheKey.VARIANT_COMPOSITE);
+            // Pooled bitmaps are the size of the old reflections
+            mRecycler.clearPools();
+        }
+        if (mAdapter instanceof AsyncCoverFlowAdapter) {
+            ((AsyncCoverFlowAdapter) mAdapter)
+                    .setPreferredConfig(getPreferredConfig());
+            ((AsyncCoverFlowAdapter) mAdapter)
+                    .setUploadToHardware(isHardwareMemoryMode());
+        }
+
+        invalidate();
+    }
+
+    public MemoryMode getMemoryMode() {
+        return mMemoryMode;
+    }
+
+    private int getReflectionSampleSize() {
+        return mMemoryMode == MemoryMode.NORMAL ? 1
+                : LOW_MEMORY_REFLECTION_SAMPLE_SIZE;
+    }
+
+    /**
+     * @return true if bitmaps made for cards are moved to graphics memory,
+     * only on versions which have hardware bitmaps
+     */
+    private boolean isHardwareMemoryMode() {
+        return mMemoryMode == MemoryMode.HARDWARE
+                && BitmapUtils.getHardwareConfig() != null;
+    }
+
+    /**
+     * @return config {@link AsyncCoverFlowAdapter} should decode images in.
+     * Hardware bitmaps cannot be read, so in {@link MemoryMode#HARDWARE}
+     * images are decoded in software too and moved by the adapter.
+     */
+    private Bitmap.Config getPreferredConfig() {
+        if (mMemoryMode == MemoryMode.NORMAL) {
+            return null;
+        }
+        return Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * Skip drawing what nearer cards cover (disabled by default). Only cards
+     * drawn fully opaque, the one centered at rest, with images without alpha
+     * channel which stay rectangles on screen, hide what is behind them.
+     * Fully transparent cards are skipped.
+     */
+    public void setOcclusionCullingEnabled(boolean enabled) {
+        if (mOcclusionCulling == enabled) {
+            return;
+        }
+
+        mOcclusionCulling = enabled;
+        invalidate();
+    }
+
+    public boolean isOcclusionCullingEnabled() {
+        return mOcclusionCulling;
+    }
+
+    /**
+     * Draw side cards from downscaled copies of their images (the default),
+     * which are sharper and cheaper to draw than the full image. The copies
+     * share the cache budget of reflections.
+     */
+    public void setMipmapEnabled(boolean enabled) {
+        mMipmapEnabled = enabled;
+
+        if (!enabled && mRecycler != null) {
+            for (int level = 1; level <= CoverFlowMath.MAX_MIPMAP_LEVEL; level++) {
+                mRecycler.removeVariant(CacheKey.mipmapVariant(level));
+            }
+        }
+        invalidate();
     }
 
     public void setReflectionGap(int gap) {
@@ -1012,6 +2360,96 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
             gap = 0;
 
         reflectGap = gap;
+        requestMeasure();
+
+        if (mRecycler != null) {
+            mRecycler.removeVariant(CacheKey.VARIANT_COMPOSITE);
+        }
+    }
+
+    /**
+     * Set color of the placeholder drawn while an image of
+     * {@link AsyncCoverFlowAdapter} is loading.
+     */
+    public void setPlaceholderColor(int color) {
+        mPlaceholderPaint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * Choose which reflections and mipmap levels are dropped first when the
+     * cache is full. Default is a {@link DistanceEvictionPolicy}, a
+     * {@link LruEvictionPolicy} behaves like earlier versions.
+     */
+    public void setEvictionPolicy(EvictionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+
+        mEvictionPolicy = policy;
+        if (mRecycler != null) {
+            mRecycler.setEvictionPolicy(policy);
+        }
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return mEvictionPolicy;
+    }
+
+    /**
+     * @return how many times a reflection or mipmap level was found in cache
+     * since the first adapter was set
+     */
+    public int getCacheHitCount() {
+        return mRecycler != null ? mRecycler.hitCount() : 0;
+    }
+
+    /**
+     * @return how many times a reflection or mipmap level was missing from
+     * cache since the first adapter was set
+     */
+    public int getCacheMissCount() {
+        return mRecycler != null ? mRecycler.missCount() : 0;
+    }
+
+    /**
+     * @return how many bitmaps were evicted from cache since the first adapter
+     * was set
+     */
+    public int getCacheEvictionCount() {
+        return mRecycler != null ? mRecycler.evictionCount() : 0;
+    }
+
+    /**
+     * Collect frame timings and cache counters, and hand them to listener
+     * every given count of frames. Collecting costs a few clock reads per
+     * card and allocates nothing. Pass null to stop.
+     */
+    public void setMetricsListener(CoverFlowMetrics.Listener listener,
+                                   int frameInterval) {
+        if (listener != null && frameInterval < 1) {
+            throw new IllegalArgumentException("frameInterval must be at least 1");
+        }
+
+        mMetricsListener = listener;
+        mMetricsFrameInterval = frameInterval;
+        mMetricsFrames = 0;
+        if (listener == null) {
+            mMetrics = null;
+        } else if (mMetrics == null) {
+            mMetrics = new CoverFlowMetrics();
+        }
+    }
+
+    /**
+     * @return metrics collected so far with cache counters up to date, or
+     * null if no metrics listener is set
+     */
+    public CoverFlowMetrics getMetrics() {
+        if (mMetrics != null) {
+            updateCacheMetrics();
+        }
+        return mMetrics;
     }
 
     public void disableTopImageClick() {
@@ -1030,37 +2468,119 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         }
 
         if (mTopImageIndex != position) {
-            if (mScroller.computeScrollOffset()) {
-                mScroller.abortAnimation();
-            }
-
-            final int from = (int) (mOffset * 100);
-            final int disX = (int) ((position - mVisibleImages) * 100) - from;
-            mScroller.startScroll(
-                    from,
-                    0,
-                    disX,
-                    0,
-                    DURATION
-                            * Math.min(
-                            Math.abs(position + max - mTopImageIndex),
-                            Math.abs(position - mTopImageIndex)));
+            endAnimation();
+
+            // Go the shorter way around, images loop
+            int target = CoverFlowMath.wrapPosition(position - mVisibleImages
+                    - mOffsetBase, max);
+            if (target > max >> 1) {
+                target -= max;
+            }
+
+            if (mSelectionJumpEnabled
+                    && Math.abs(target - mOffset) > mSelectionJumpDistance) {
+                target = jumpNear(target);
+            }
+
+            startMotion(ANIMATION_SELECTION, mOffset, target);
 
             invalidate();
         }
     }
 
-    @Override
-    public void computeScroll() {
-        super.computeScroll();
+    /**
+     * Move offset at once to {@link #mSelectionJumpDistance} cards before
+     * target. Loads still queued for the cards in between are dropped, they
+     * will never be on screen.
+     *
+     * @return target relative to the new offset
+     */
+    private int jumpNear(int target) {
+        final int from = target > mOffset
+                ? target - mSelectionJumpDistance
+                : target + mSelectionJumpDistance;
 
-        if (mScroller.computeScrollOffset()) {
-            final int currX = mScroller.getCurrX();
+        if (mAdapter instanceof AsyncCoverFlowAdapter) {
+            ((AsyncCoverFlowAdapter) mAdapter).cancelPendingLoads();
+        }
+        if (mBitmapWorker != null) {
+            mBitmapWorker.cancel();
+        }
 
-            mOffset = (float) currX / 100;
+        mOffsetBase = CoverFlowMath.wrapPosition(mOffsetBase + from, mItemCount);
+        mOffset = 0;
+        mLastDrawOffset = 0;
+        return target - from;
+    }
 
-            invalidate();
+    /**
+     * When enabled (the default), {@link #setSelection(int)} to a position
+     * more than jumpDistance cards away skips straight to jumpDistance cards
+     * before it and animates only the rest. Only images around the selected
+     * position are loaded and the animation takes the same time however far
+     * it is. When disabled every card in between scrolls by.
+     */
+    public void setSelectionJumpEnabled(boolean enabled) {
+        mSelectionJumpEnabled = enabled;
+    }
+
+    public boolean isSelectionJumpEnabled() {
+        return mSelectionJumpEnabled;
+    }
+
+    /**
+     * @param jumpDistance cards a jumping {@link #setSelection(int)} animates
+     *                     over, at least 1. Default is 3.
+     */
+    public void setSelectionJumpDistance(int jumpDistance) {
+        if (jumpDistance < 1) {
+            throw new IllegalArgumentException("jumpDistance must be at least 1");
+        }
+
+        mSelectionJumpDistance = jumpDistance;
+    }
+
+    public int getSelectionJumpDistance() {
+        return mSelectionJumpDistance;
+    }
+
+    /**
+     * Choose how flings and {@link #setSelection(int)} move. Default is a
+     * {@link FrictionPhysics}, {@link SpringSnapPhysics} and
+     * {@link DecayPhysics} are also provided. Stops the running animation.
+     */
+    public void setPhysics(CoverFlowPhysics physics) {
+        if (physics == null) {
+            throw new IllegalArgumentException("physics must not be null");
         }
+
+        endAnimation();
+        mPhysics = physics;
+    }
+
+    public CoverFlowPhysics getPhysics() {
+        return mPhysics;
+    }
+
+    /**
+     * Scroll to given offset at once, stopping any running animation. Offset
+     * is counted in cards and may be fractional: the image of position p is on
+     * top at offset p minus the count of images on each side.
+     */
+    public void setOffset(float offset) {
+        endAnimation();
+
+        mOffsetBase = 0;
+        mOffset = offset;
+        rebaseOffset();
+        invalidate();
+    }
+
+    /**
+     * @return current offset, wrapped into the first loop through the adapter
+     */
+    public float getOffset() {
+        return mOffsetBase + mOffset;
     }
 
     public void setTopImageLongClickListener(TopImageLongClickListener listener) {
@@ -1099,50 +2619,331 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
         }
     }
 
+    /**
+     * Cached reflections and mipmap levels, and the pool their bitmaps go back
+     * to, kept apart for every view type of the adapter. Each type has its
+     * share of the budget, so items of very different sizes do not evict each
+     * other.
+     */
     class RecycleBin {
 
-        //Lru缓存来来缓存bitmap
-        final LruCache<Integer, Bitmap> bitmapCache = new LruCache<Integer, Bitmap>(
-                getCacheSize(getContext())) {
-            @Override
-            protected int sizeOf(Integer key, Bitmap bitmap) {
-                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
-                    return bitmap.getRowBytes() * bitmap.getHeight();
-                } else {
-                    return bitmap.getByteCount();
+        private final int cacheSize = getCacheSize(getContext());
+
+        // Current budget, lowered under memory pressure, never above cacheSize
+        private int budget = cacheSize;
+        private long lastTrimTime;
+
+        //缓存bitmap by view type, keyed on (itemId, version, variant), evicted by mEvictionPolicy
+        private CoverFlowCache[] bitmapCaches = new CoverFlowCache[0];
+
+        // Bitmaps dropped from the cache of the same type, reused by the next
+        // ones built
+        private BitmapPool[] bitmapPools = new BitmapPool[0];
+
+        // Share of the budget of every type, see getViewTypeCacheWeight()
+        private int[] weights = new int[0];
+        private int totalWeight;
+
+        // Bitmaps dropped from a cache while a frame is drawn, and their
+        // pools. The frame may have drawn them already, a display list still
+        // reads them, so they are pooled only once the frame is done.
+        private final ArrayList<Bitmap> droppedInFrame = new ArrayList<Bitmap>();
+        private final ArrayList<BitmapPool> droppedPools = new ArrayList<BitmapPool>();
+        private boolean drawingFrame;
+
+        void beginFrame() {
+            drawingFrame = true;
+        }
+
+        void endFrame() {
+            drawingFrame = false;
+            for (int i = 0; i < droppedInFrame.size(); i++) {
+                droppedPools.get(i).put(droppedInFrame.get(i));
+            }
+            droppedInFrame.clear();
+            droppedPools.clear();
+        }
+
+        /**
+         * Make room for the view types of adapter, and share the budget by
+         * their weights. Caches of types it does not have get no budget.
+         */
+        public void setViewTypes(CoverFlowAdapter adapter) {
+            final int typeCount = Math.max(1, adapter.getViewTypeCount());
+
+            weights = new int[Math.max(typeCount, bitmapCaches.length)];
+            totalWeight = 0;
+            for (int i = 0; i < typeCount; i++) {
+                weights[i] = Math.max(0, adapter.getViewTypeCacheWeight(i));
+                totalWeight += weights[i];
+            }
+
+            if (typeCount > bitmapCaches.length) {
+                final CoverFlowCache[] caches = new CoverFlowCache[typeCount];
+                final BitmapPool[] pools = new BitmapPool[typeCount];
+                System.arraycopy(bitmapCaches, 0, caches, 0, bitmapCaches.length);
+                System.arraycopy(bitmapPools, 0, pools, 0, bitmapPools.length);
+                for (int i = bitmapCaches.length; i < typeCount; i++) {
+                    pools[i] = new BitmapPool(0);
+                    caches[i] = newCache(pools[i], typeBudget(i, budget));
                 }
+                bitmapCaches = caches;
+                bitmapPools = pools;
             }
 
-            @Override
-            protected void entryRemoved(boolean evicted, Integer key,
-                                        Bitmap oldValue, Bitmap newValue) {
-                if (evicted && oldValue != null && !oldValue.isRecycled()) {
-                    oldValue.recycle();
-                    oldValue = null;
+            applyBudget(budget, false);
+        }
+
+        private CoverFlowCache newCache(final BitmapPool pool, int maxSize) {
+            return new CoverFlowCache(maxSize, mEvictionPolicy) {
+                @Override
+                protected void entryRemoved(boolean evicted, CacheKey key,
+                                            Bitmap oldValue) {
+                    if (drawingFrame) {
+                        droppedInFrame.add(oldValue);
+                        droppedPools.add(pool);
+                    } else {
+                        pool.put(oldValue);
+                    }
                 }
+            };
+        }
+
+        /**
+         * @return view type of the item at given adapter position, 0 if the
+         * adapter reports one out of range
+         */
+        private int typeOf(int position) {
+            final int type = mAdapter != null ? mAdapter.getItemViewType(position) : 0;
+            return type >= 0 && type < bitmapCaches.length ? type : 0;
+        }
+
+        private int typeBudget(int type, int budget) {
+            if (totalWeight == 0) {
+                return 0;
+            }
+
+            return (int) ((long) budget * weights[type] / totalWeight);
+        }
+
+        /**
+         * Trim every type to its share of budget, and size the pools after
+         * it, smaller if under pressure
+         */
+        private void applyBudget(int budget, boolean pressure) {
+            for (int i = 0; i < bitmapCaches.length; i++) {
+                final int typeBudget = typeBudget(i, budget);
+                bitmapCaches[i].setMaxSize(typeBudget);
+                bitmapPools[i].resize(pressure ? typeBudget / 8 : typeBudget / 4);
+            }
+        }
+
+        public BitmapPool[] getBitmapPools() {
+            return bitmapPools;
+        }
+
+        /**
+         * @return pool for the bitmaps of the item at given adapter position
+         */
+        public BitmapPool getBitmapPool(int position) {
+            return bitmapPools[typeOf(position)];
+        }
+
+        /**
+         * @param position position in adapter of the card key belongs to
+         */
+        public Bitmap getCachedBitmap(CacheKey key, int position) {
+            return bitmapCaches[typeOf(position)].get(key);
+        }
+
+        /**
+         * @param key      key of the bitmap, copied if it is stored
+         * @param position position in adapter of the card it belongs to
+         */
+        public void buildBitmapCache(CacheKey key, Bitmap b, int position) {
+            restoreBudget();
+            // Trimmed to the budget of its type, set by applyBudget
+            bitmapCaches[typeOf(position)].put(key.copy(), b, position);
+        }
+
+        /**
+         * Shrink to the tier of given level, evicted bitmaps are released
+         * right away. Nothing is rebuilt when pressure goes down, the budget
+         * only grows back as cards are drawn again.
+         */
+        public void trimMemory(int level) {
+            final int tierBudget;
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+                tierBudget = 0;
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                tierBudget = cacheSize / 4;
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                tierBudget = cacheSize / 2;
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+                tierBudget = cacheSize / 4;
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                tierBudget = cacheSize / 2;
+            } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+                tierBudget = cacheSize * 3 / 4;
+            } else {
+                return;
             }
-        };
 
-        public Bitmap getCachedReflectiuon(Bitmap origin) {
-            return bitmapCache.get(origin.hashCode());
+            lastTrimTime = SystemClock.uptimeMillis();
+            if (tierBudget >= budget) {
+                return;
+            }
+
+            budget = tierBudget;
+            applyBudget(budget, true);
+
+            // Pools shrink harder, they hold nothing on screen
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                for (BitmapPool pool : bitmapPools) {
+                    pool.resize(0);
+                }
+            }
         }
 
-        public void buildReflectionCache(Bitmap origin, Bitmap b) {
-            bitmapCache.put(origin.hashCode(), b);
-            //内存释放
-            Runtime.getRuntime().gc();
+        /**
+         * Cards are drawn, so the view is visible again: come back to a
+         * quarter of the budget at once, then double it at most once per
+         * {@link #CACHE_RESTORE_DELAY} while no trim arrives.
+         */
+        private void restoreBudget() {
+            if (budget >= cacheSize) {
+                return;
+            }
+
+            final long now = SystemClock.uptimeMillis();
+            if (budget < cacheSize / 4) {
+                budget = cacheSize / 4;
+            } else if (now - lastTrimTime >= CACHE_RESTORE_DELAY) {
+                budget = Math.min(cacheSize, budget * 2);
+            } else {
+                return;
+            }
+
+            lastTrimTime = now;
+            applyBudget(budget, false);
         }
 
-        public Bitmap removeReflectionCache(Bitmap origin) {
-            if (origin == null) {
+        public Bitmap removeBitmapCache(CacheKey key, int position) {
+            if (key == null) {
                 return null;
             }
 
-            return bitmapCache.remove(origin.hashCode());
+            return bitmapCaches[typeOf(position)].remove(key);
+        }
+
+        /**
+         * Remove every cached bitmap of given variant
+         */
+        public void removeVariant(int variant) {
+            for (CoverFlowCache cache : bitmapCaches) {
+                cache.removeVariant(variant);
+            }
+        }
+
+        public void setWindow(float center, int itemCount, int direction) {
+            for (CoverFlowCache cache : bitmapCaches) {
+                cache.setWindow(center, itemCount, direction);
+            }
+        }
+
+        public void setEvictionPolicy(EvictionPolicy policy) {
+            for (CoverFlowCache cache : bitmapCaches) {
+                cache.setEvictionPolicy(policy);
+            }
+        }
+
+        /**
+         * Items were changed or removed, see {@link CoverFlowCache#removePositions}
+         */
+        public void removePositions(int start, int count) {
+            for (CoverFlowCache cache : bitmapCaches) {
+                cache.removePositions(start, count);
+            }
+        }
+
+        /**
+         * Items were inserted or removed, entries from start on move by
+         * delta. Without stable ids they are keyed on their old position and
+         * could never be hit again, they are removed instead.
+         */
+        public void offsetPositions(int start, int delta) {
+            if (!mAdapter.hasStableIds()) {
+                removePositions(start, Integer.MAX_VALUE);
+                return;
+            }
+
+            for (CoverFlowCache cache : bitmapCaches) {
+                cache.offsetPositions(start, delta);
+            }
+        }
+
+        /**
+         * The item at from was moved to to, like
+         * {@link #offsetPositions(int, int)} entries of the items in between
+         * are removed without stable ids.
+         */
+        public void movePosition(int from, int to) {
+            if (!mAdapter.hasStableIds()) {
+                removePositions(Math.min(from, to), Math.abs(to - from) + 1);
+                return;
+            }
+
+            for (CoverFlowCache cache : bitmapCaches) {
+                cache.movePosition(from, to);
+            }
+        }
+
+        public int hitCount() {
+            int count = 0;
+            for (CoverFlowCache cache : bitmapCaches) {
+                count += cache.hitCount();
+            }
+            return count;
+        }
+
+        public int missCount() {
+            int count = 0;
+            for (CoverFlowCache cache : bitmapCaches) {
+                count += cache.missCount();
+            }
+            return count;
+        }
+
+        public int evictionCount() {
+            int count = 0;
+            for (CoverFlowCache cache : bitmapCaches) {
+                count += cache.evictionCount();
+            }
+            return count;
+        }
+
+        /**
+         * @return bytes of the bitmaps cached and pooled
+         */
+        public long byteCount() {
+            long bytes = 0;
+            for (int i = 0; i < bitmapCaches.length; i++) {
+                bytes += bitmapCaches[i].size() + bitmapPools[i].size();
+            }
+            return bytes;
+        }
+
+        public void clearPools() {
+            for (BitmapPool pool : bitmapPools) {
+                pool.clear();
+            }
         }
 
         public void clear() {
-            bitmapCache.evictAll();
+            for (int i = 0; i < bitmapCaches.length; i++) {
+                bitmapCaches[i].evictAll();
+                bitmapPools[i].clear();
+            }
         }
 
         private int getCacheSize(Context context) {
@@ -1151,10 +2952,356 @@ public class CoverFlowView<T extends CoverFlowAdapter> extends View {
             final int memClass = am.getMemoryClass();
             // Target ~5% of the available heap.
             int cacheSize = 1024 * 1024 * memClass / 21;
+            if (isLowRamDevice(am)) {
+                cacheSize /= 2;
+            }
 
-            Log.e(VIEW_LOG_TAG, "cacheSize == " + cacheSize);
+            if (CoverFlowLog.isLoggable()) {
+                CoverFlowLog.d(VIEW_LOG_TAG, "cacheSize == " + cacheSize);
+            }
             return cacheSize;
         }
+
+        @TargetApi(Build.VERSION_CODES.KITKAT)
+        private boolean isLowRamDevice(ActivityManager am) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                    && am.isLowRamDevice();
+        }
+    }
+
+    /**
+     * Forward memory pressure of the whole application to {@link #trimMemory(int)}.
+     * Only created on Ice Cream Sandwich and newer.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private class MemoryTrimmer implements ComponentCallbacks2 {
+        @Override
+        public void onTrimMemory(int level) {
+            trimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    }
+
+    /**
+     * Build bitmaps derived from images, reflections, composites and mipmap
+     * levels, on a background thread and hand finished ones to
+     * {@link RecycleBin}. All methods must be called on the main thread.
+     */
+    class BitmapWorker {
+
+        private static final int WORKER_THREADS = 1;
+
+        private static final int WORKER_QUEUE_SIZE = 16;
+
+        private final ThreadPoolExecutor mExecutor = CoverFlowExecutors
+                .newBoundedExecutor("CoverFlowWorker", WORKER_THREADS,
+                        WORKER_QUEUE_SIZE);
+
+        private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+        // Pending tasks keyed same as cache of RecycleBin
+        private final HashMap<CacheKey, BuildTask> mPendingTasks = new HashMap<CacheKey, BuildTask>();
+
+        private int mGeneration;
+
+        /**
+         * @param key key of the bitmap to build, its variant tells what to
+         *            build. Copied if the request is queued.
+         */
+        public void request(CacheKey key, Bitmap src, int position) {
+            if (mPendingTasks.containsKey(key)) {
+                return;
+            }
+
+            final BuildTask task = new BuildTask(key.copy(), src,
+                    position, reflectHeightFraction, getReflectionSampleSize(),
+                    mImageTargetHeight, reflectGap, isHardwareMemoryMode(),
+                    mGeneration, mRecycler.getBitmapPool(position));
+            // Keep the adapter from reusing src until the task is done
+            if (mAdapter instanceof AsyncCoverFlowAdapter) {
+                task.owner = (AsyncCoverFlowAdapter) mAdapter;
+                task.owner.acquireImage(src);
+            }
+            mPendingTasks.put(task.key, task);
+            mExecutor.execute(task);
+        }
+
+        public void cancel() {
+            final ArrayList<Runnable> dropped = new ArrayList<Runnable>();
+            mExecutor.getQueue().drainTo(dropped);
+            for (Runnable task : dropped) {
+                ((BuildTask) task).releaseSource();
+            }
+            // Running ones release in onBitmapBuilt
+            mPendingTasks.clear();
+            mGeneration++;
+        }
+
+        private void onBitmapBuilt(BuildTask task, Bitmap result) {
+            task.releaseSource();
+            if (mPendingTasks.get(task.key) == task) {
+                mPendingTasks.remove(task.key);
+            }
+
+            if (result == null) {
+                return;
+            }
+
+            if (task.generation != mGeneration
+                    || (task.key.variant == CacheKey.VARIANT_REFLECTION
+                    && (task.fraction != reflectHeightFraction
+                    || task.sampleSize != getReflectionSampleSize()))
+                    || (task.key.variant == CacheKey.VARIANT_COMPOSITE
+                    && (task.fraction != reflectHeightFraction
+                    || task.imageHeight != mImageTargetHeight
+                    || task.gap != reflectGap))
+                    || mRecycler == null) {
+                task.pool.put(result);
+                return;
+            }
+
+            if (mMetrics != null && (task.key.variant == CacheKey.VARIANT_REFLECTION
+                    || task.key.variant == CacheKey.VARIANT_COMPOSITE)) {
+                mMetrics.reflectionBuildTime.record(task.buildNanos / 1000);
+            }
+
+            mRecycler.buildBitmapCache(task.key, result, task.position);
+            invalidateCard(task.position);
+        }
+
+        private class BuildTask implements CoverFlowExecutors.DiscardableTask {
+            final CacheKey key;
+            final Bitmap src;
+            final int position;
+            final float fraction;
+            final int sampleSize;
+            final int imageHeight;
+            final int gap;
+            final boolean hardware;
+            final int generation;
+            final BitmapPool pool;
+            // Adapter src belongs to, released once on the main thread
+            AsyncCoverFlowAdapter owner;
+            // Time run() spent building, read on the main thread
+            long buildNanos;
+
+            BuildTask(CacheKey key, Bitmap src, int position, float fraction,
+                      int sampleSize, int imageHeight, int gap,
+                      boolean hardware, int generation, BitmapPool pool) {
+                this.key = key;
+                this.src = src;
+                this.position = position;
+                this.fraction = fraction;
+                this.sampleSize = sampleSize;
+                this.imageHeight = imageHeight;
+                this.gap = gap;
+                this.hardware = hardware;
+                this.generation = generation;
+                this.pool = pool;
+            }
+
+            @Override
+            public void run() {
+                Bitmap result = null;
+                final long start = System.nanoTime();
+                if (!src.isRecycled()) {
+                    try {
+                        if (key.variant == CacheKey.VARIANT_REFLECTION) {
+                            result = BitmapUtils.createReflectedBitmap(src,
+                                    fraction, pool, sampleSize);
+                        } else if (key.variant == CacheKey.VARIANT_COMPOSITE) {
+                            result = BitmapUtils.createCompositeBitmap(src,
+                                    imageHeight, gap, fraction, pool);
+                        } else {
+                            result = BitmapUtils.createMipmapLevel(src,
+                                    CacheKey.mipmapLevel(key.variant), pool);
+                        }
+                        if (hardware) {
+                            result = BitmapUtils.toHardware(result, pool);
+                        }
+                    } catch (OutOfMemoryError e) {
+                        e.printStackTrace();
+                    } catch (RuntimeException e) {
+                        // src was recycled by its owner while being read
+                        e.printStackTrace();
+                    }
+
+                    if (result != null && src.isRecycled()) {
+                        pool.put(result);
+                        result = null;
+                    }
+                }
+
+                final Bitmap built = result;
+                buildNanos = System.nanoTime() - start;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onBitmapBuilt(BuildTask.this, built);
+                    }
+                });
+            }
+
+            @Override
+            public void onDiscarded() {
+                releaseSource();
+                if (mPendingTasks.get(key) == this) {
+                    mPendingTasks.remove(key);
+                }
+            }
+
+            /**
+             * Let the adapter reuse src again, main thread only
+             */
+            void releaseSource() {
+                if (owner != null) {
+                    owner.releaseImage(src);
+                    owner = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Call {@link #onAnimationFrame(long)} on the next frame: on vsync through
+     * {@link Choreographer} on Jelly Bean and newer, posted to the view before.
+     * One instance is reused for every frame of every animation.
+     */
+    private class AnimationFrameCallback implements Runnable {
+        private final VsyncCallback mVsyncCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? new VsyncCallback(this) : null;
+
+        private boolean mScheduled;
+
+        void schedule() {
+            if (mScheduled) {
+                return;
+            }
+
+            mScheduled = true;
+            if (mVsyncCallback != null) {
+                mVsyncCallback.post();
+            } else {
+                post(this);
+            }
+        }
+
+        void cancel() {
+            if (!mScheduled) {
+                return;
+            }
+
+            mScheduled = false;
+            if (mVsyncCallback != null) {
+                mVsyncCallback.remove();
+            } else {
+                removeCallbacks(this);
+            }
+        }
+
+        void doFrame(long frameTimeNanos) {
+            mScheduled = false;
+            onAnimationFrame(frameTimeNanos);
+        }
+
+        @Override
+        public void run() {
+            doFrame(System.nanoTime());
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class VsyncCallback implements Choreographer.FrameCallback {
+        private final AnimationFrameCallback mTarget;
+
+        VsyncCallback(AnimationFrameCallback target) {
+            mTarget = target;
+        }
+
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void remove() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mTarget.doFrame(frameTimeNanos);
+        }
+    }
+
+    /**
+     * Bitmaps and matrices of a card, between {@link #prepareCard} and
+     * {@link #paintCard}
+     */
+    private static final class Card {
+        final RectF bounds;
+        final Matrix matrix = new Matrix();
+        final Matrix reflectionMatrix = new Matrix();
+        // Screen pixels the card paints opaque, empty if none
+        final Rect occluder = new Rect();
+
+        // Drawn through matrix: image, mipmap level or composite, null for a
+        // placeholder of width x height
+        Bitmap bitmap;
+        Bitmap reflection;
+        // Image whose reflection is drawn by shader
+        Bitmap shaderImage;
+        int width;
+        int height;
+        int alpha;
+
+        Card(RectF bounds) {
+            this.bounds = bounds;
+        }
+
+        /**
+         * Drop references to bitmaps, so none is kept after its frame
+         */
+        void clear() {
+            bitmap = null;
+            reflection = null;
+            shaderImage = null;
+            occluder.setEmpty();
+        }
+    }
+
+    /**
+     * Shader drawing the bottom part of an image, faded out the same way as
+     * {@link BitmapUtils#createReflectedBitmap(Bitmap, float)} does.
+     */
+    private static class ReflectionShader {
+        final Shader shader;
+        final float fraction;
+        final int srcHeight;
+        final int height;
+
+        ReflectionShader(Bitmap src, float fraction) {
+            this.srcHeight = src.getHeight();
+            this.fraction = fraction;
+            this.height = (int) (fraction * srcHeight);
+
+            final BitmapShader bitmapShader = new BitmapShader(src,
+                    Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            final Matrix local = new Matrix();
+            local.setTranslate(0, -(srcHeight - height));
+            bitmapShader.setLocalMatrix(local);
+
+            final LinearGradient fade = new LinearGradient(0, 0, 0, height,
+                    0x70FFFFFF, 0x00FFFFFF, Shader.TileMode.MIRROR);
+
+            shader = new ComposeShader(bitmapShader, fade, PorterDuff.Mode.DST_IN);
+        }
     }
 
     public interface TopImageLongClickListener {
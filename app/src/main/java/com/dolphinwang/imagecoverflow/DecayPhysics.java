@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Exponential decay of velocity, fast at first then gliding gently into
+ * place, like scroll views of iOS.
+ */
+public class DecayPhysics implements CoverFlowPhysics {
+
+    public static final float DEFAULT_TIME_CONSTANT = 0.325f;
+
+    // Distance to target, in cards, under which the motion is over
+    private static final float REST_DISTANCE = 0.002f;
+
+    private final float mTimeConstant;
+
+    public DecayPhysics() {
+        this(DEFAULT_TIME_CONSTANT);
+    }
+
+    /**
+     * @param timeConstant seconds for velocity to drop to 37% of what it was
+     */
+    public DecayPhysics(float timeConstant) {
+        if (timeConstant <= 0) {
+            throw new IllegalArgumentException("time constant must be positive");
+        }
+
+        mTimeConstant = timeConstant;
+    }
+
+    @Override
+    public float getTargetOffset(float startOffset, float velocity) {
+        return (float) Math.floor(startOffset + velocity * mTimeConstant + 0.5);
+    }
+
+    @Override
+    public float getVelocityForTarget(float startOffset, float targetOffset) {
+        return (targetOffset - startOffset) / mTimeConstant;
+    }
+
+    @Override
+    public float getDuration(float startOffset, float velocity) {
+        final float amplitude = Math.abs(velocity * mTimeConstant);
+        if (amplitude <= REST_DISTANCE) {
+            return 0;
+        }
+
+        return (float) (mTimeConstant * Math.log(amplitude / REST_DISTANCE));
+    }
+
+    @Override
+    public float getOffset(float startOffset, float velocity, float time) {
+        final float amplitude = velocity * mTimeConstant;
+        if (time >= getDuration(startOffset, velocity)) {
+            return getTargetOffset(startOffset, velocity);
+        }
+
+        return startOffset + amplitude
+                * (1 - (float) Math.exp(-time / mTimeConstant));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Evict the bitmap of the card farthest from the middle one first, going
+ * around the ring of cards. Cards ahead in the scroll direction count as
+ * nearer than cards behind, since they are about to be seen. This is the
+ * default policy of {@link CoverFlowView}.
+ */
+public class DistanceEvictionPolicy implements EvictionPolicy {
+
+    private final float mAheadWeight;
+
+    public DistanceEvictionPolicy() {
+        this(0.5f);
+    }
+
+    /**
+     * @param aheadWeight distance of cards ahead in scroll direction is
+     *                    multiplied by this, between 0 and 1
+     */
+    public DistanceEvictionPolicy(float aheadWeight) {
+        mAheadWeight = aheadWeight;
+    }
+
+    @Override
+    public float rate(int position, long lastAccess, float center,
+                      int itemCount, int direction) {
+        if (itemCount <= 0) {
+            return 0;
+        }
+
+        // Shortest signed distance around the ring
+        float delta = (position - center) % itemCount;
+        if (delta > itemCount / 2f) {
+            delta -= itemCount;
+        } else if (delta < -itemCount / 2f) {
+            delta += itemCount;
+        }
+
+        float distance = Math.abs(delta);
+        if (direction != 0 && (delta > 0) == (direction > 0)) {
+            distance *= mAheadWeight;
+        }
+
+        return -distance;
+    }
+}
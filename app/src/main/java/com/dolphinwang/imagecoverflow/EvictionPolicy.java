@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Decide which cached bitmaps {@link CoverFlowView} drops first when its cache
+ * is full. Called on the main thread for every entry while evicting, it should
+ * neither allocate nor block.
+ *
+ * @see CoverFlowView#setEvictionPolicy(EvictionPolicy)
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Rate a cached bitmap, the lowest rated ones are evicted first. Ties are
+     * broken by recency.
+     *
+     * @param position   position in adapter of the card the bitmap belongs to
+     * @param lastAccess sequence number of the last time the bitmap was used,
+     *                   higher is more recent
+     * @param center     position in adapter of the card in the middle, with
+     *                   the fraction it is scrolled by. Between 0 and itemCount.
+     * @param itemCount  count of items in adapter
+     * @param direction  greater than 0 when scrolling towards higher positions,
+     *                   lower than 0 towards lower ones, 0 when idle
+     */
+    float rate(int position, long lastAccess, float center, int itemCount,
+               int direction);
+}
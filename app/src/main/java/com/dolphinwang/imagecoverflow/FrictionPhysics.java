@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Constant deceleration, the card list slides and slows down linearly until
+ * it stops. This is the default physics of {@link CoverFlowView}.
+ * <p>
+ * A motion never lasts longer than its max duration: one which would, like a
+ * selection thousands of cards away, brakes just hard enough to stop in time.
+ */
+public class FrictionPhysics implements CoverFlowPhysics {
+
+    public static final float DEFAULT_FRICTION = 10.0f;
+
+    public static final float DEFAULT_MAX_DURATION = 3.0f;
+
+    private final float mFriction;
+    private final float mMaxDuration;
+
+    public FrictionPhysics() {
+        this(DEFAULT_FRICTION);
+    }
+
+    /**
+     * @param friction deceleration, in cards per second squared
+     */
+    public FrictionPhysics(float friction) {
+        this(friction, DEFAULT_MAX_DURATION);
+    }
+
+    /**
+     * @param friction    deceleration, in cards per second squared
+     * @param maxDuration seconds a motion lasts at most
+     */
+    public FrictionPhysics(float friction, float maxDuration) {
+        if (friction <= 0) {
+            throw new IllegalArgumentException("friction must be positive");
+        }
+        if (maxDuration <= 0) {
+            throw new IllegalArgumentException("maxDuration must be positive");
+        }
+
+        mFriction = friction;
+        mMaxDuration = maxDuration;
+    }
+
+    /**
+     * Deceleration of a motion starting at velocity, raised above friction
+     * when the motion would last longer than max duration.
+     */
+    private double deceleration(float velocity) {
+        return Math.max(mFriction, Math.abs((double) velocity) / mMaxDuration);
+    }
+
+    @Override
+    public float getTargetOffset(float startOffset, float velocity) {
+        double delta = (double) velocity * velocity / (deceleration(velocity) * 2);
+        if (velocity < 0)
+            delta = -delta;
+
+        return (float) Math.floor(startOffset + delta + 0.5);
+    }
+
+    @Override
+    public float getVelocityForTarget(float startOffset, float targetOffset) {
+        final double distance = Math.abs((double) targetOffset - startOffset);
+        double velocity = Math.sqrt(distance * mFriction * 2);
+        if (velocity > mFriction * mMaxDuration) {
+            // Braking harder, the motion covers distance in max duration
+            velocity = distance * 2 / mMaxDuration;
+        }
+        if (targetOffset < startOffset)
+            velocity = -velocity;
+
+        return (float) velocity;
+    }
+
+    @Override
+    public float getDuration(float startOffset, float velocity) {
+        return (float) (Math.abs(velocity) / deceleration(velocity));
+    }
+
+    @Override
+    public float getOffset(float startOffset, float velocity, float time) {
+        if (time >= getDuration(startOffset, velocity)) {
+            return getTargetOffset(startOffset, velocity);
+        }
+
+        double delta = Math.abs((double) velocity) * time
+                - deceleration(velocity) * time * time / 2;
+        if (velocity < 0)
+            delta = -delta;
+
+        return (float) (startOffset + delta);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import java.util.Arrays;
+
+/**
+ * Width and height of images by adapter position, stored in two sorted
+ * primitive arrays like {@link android.util.SparseArray} but without any
+ * per-entry object. Not thread safe.
+ */
+final class ImageSizeIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] mPositions = new int[INITIAL_CAPACITY];
+    // width in high 32 bits, height in low 32 bits
+    private long[] mSizes = new long[INITIAL_CAPACITY];
+    private int mSize;
+
+    /**
+     * @return index of position, or a negative number if its size is unknown
+     */
+    int indexOf(int position) {
+        return Arrays.binarySearch(mPositions, 0, mSize, position);
+    }
+
+    int widthAt(int index) {
+        return (int) (mSizes[index] >>> 32);
+    }
+
+    int heightAt(int index) {
+        return (int) mSizes[index];
+    }
+
+    int positionAt(int index) {
+        return mPositions[index];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return true if the size of position was unknown or has changed
+     */
+    boolean put(int position, int width, int height) {
+        final long value = ((long) width << 32) | (height & 0xFFFFFFFFL);
+
+        int index = indexOf(position);
+        if (index >= 0) {
+            if (mSizes[index] == value) {
+                return false;
+            }
+            mSizes[index] = value;
+            return true;
+        }
+
+        index = ~index;
+        if (mSize == mPositions.length) {
+            final int capacity = mSize << 1;
+            final int[] positions = new int[capacity];
+            final long[] sizes = new long[capacity];
+            System.arraycopy(mPositions, 0, positions, 0, mSize);
+            System.arraycopy(mSizes, 0, sizes, 0, mSize);
+            mPositions = positions;
+            mSizes = sizes;
+        }
+
+        System.arraycopy(mPositions, index, mPositions, index + 1, mSize - index);
+        System.arraycopy(mSizes, index, mSizes, index + 1, mSize - index);
+        mPositions[index] = position;
+        mSizes[index] = value;
+        mSize++;
+        return true;
+    }
+
+    void remove(int position) {
+        final int index = indexOf(position);
+        if (index < 0) {
+            return;
+        }
+
+        System.arraycopy(mPositions, index + 1, mPositions, index, mSize - index - 1);
+        System.arraycopy(mSizes, index + 1, mSizes, index, mSize - index - 1);
+        mSize--;
+    }
+
+    /**
+     * Forget the sizes of count positions from start on.
+     */
+    void removeRange(int start, int count) {
+        final int from = lowerBound(start);
+        final int to = lowerBound(start + count);
+        System.arraycopy(mPositions, to, mPositions, from, mSize - to);
+        System.arraycopy(mSizes, to, mSizes, from, mSize - to);
+        mSize -= to - from;
+    }
+
+    /**
+     * Add delta to every position from start on. Positions must stay sorted,
+     * so when moving them down the range below must be removed first.
+     */
+    void offsetPositions(int start, int delta) {
+        for (int i = lowerBound(start); i < mSize; i++) {
+            mPositions[i] += delta;
+        }
+    }
+
+    /**
+     * Move the size of from to position to, the ones in between shift by one.
+     */
+    void move(int from, int to) {
+        final int index = indexOf(from);
+        final long size = index >= 0 ? mSizes[index] : 0;
+
+        removeRange(from, 1);
+        offsetPositions(from + 1, -1);
+        offsetPositions(to, 1);
+
+        if (index >= 0) {
+            put(to, (int) (size >>> 32), (int) size);
+        }
+    }
+
+    /**
+     * Forget the sizes of positions more than radius away from center, going
+     * around the ends of an adapter of count items.
+     */
+    void retainAround(int center, int radius, int count) {
+        int kept = 0;
+        for (int i = 0; i < mSize; i++) {
+            int distance = Math.abs(mPositions[i] - center);
+            distance = Math.min(distance, count - distance);
+            if (distance > radius) {
+                continue;
+            }
+
+            mPositions[kept] = mPositions[i];
+            mSizes[kept] = mSizes[i];
+            kept++;
+        }
+        mSize = kept;
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    // Index of the first position which is not less than position
+    private int lowerBound(int position) {
+        final int index = indexOf(position);
+        return index >= 0 ? index : ~index;
+    }
+}
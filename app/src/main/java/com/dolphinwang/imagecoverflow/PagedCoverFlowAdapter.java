@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.graphics.Bitmap;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adapter for very large catalogs, whose items are loaded a page at a time
+ * from a database or a server instead of being held in memory.
+ * <p>
+ * Pages are loaded on the decode threads of {@link AsyncCoverFlowAdapter},
+ * when the image of one of their items is first needed, so only pages around
+ * the cards on screen are ever loaded. A few pages are kept, the least
+ * recently used are dropped. Memory therefore depends on the visible window,
+ * not on {@link #getCount()}.
+ * <p>
+ * Subclasses implement {@link #getCount()}, {@link #loadPage(int, int)} and
+ * {@link #decodeImage(Object, int, int)}. For a feed whose end is not known,
+ * report the count known so far and call {@link #notifyDataSetChanged()} when
+ * it grows.
+ *
+ * @param <T> type of the items
+ */
+public abstract class PagedCoverFlowAdapter<T> extends AsyncCoverFlowAdapter {
+
+    public static final int DEFAULT_PAGE_SIZE = 32;
+
+    public static final int DEFAULT_MAX_PAGES = 4;
+
+    private final int mPageSize;
+
+    // Access ordered, guarded by itself
+    private final LinkedHashMap<Integer, List<T>> mPages;
+
+    // Only one page is loaded at a time, a decode of a page not in memory
+    // waits for the running load
+    private final Object mLoadLock = new Object();
+
+    private volatile int mPageGeneration;
+
+    public PagedCoverFlowAdapter() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * @param pageSize count of items loaded at once
+     * @param maxPages count of pages kept in memory at most, at least 2 so
+     *                 the pages on both sides of a page boundary fit
+     */
+    public PagedCoverFlowAdapter(int pageSize, int maxPages) {
+        this(pageSize, maxPages, (int) (Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    /**
+     * @param cacheSize size in bytes of the in-memory cache of decoded images
+     */
+    public PagedCoverFlowAdapter(int pageSize, final int maxPages, int cacheSize) {
+        super(cacheSize);
+
+        if (pageSize < 1 || maxPages < 2) {
+            throw new IllegalArgumentException(
+                    "pageSize must be at least 1 and maxPages at least 2");
+        }
+
+        mPageSize = pageSize;
+        mPages = new LinkedHashMap<Integer, List<T>>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Load the items of a page. Called on a background thread.
+     *
+     * @param page     index of the page, it starts at position
+     *                 page * pageSize
+     * @param pageSize count of items of a full page
+     * @return items of the page, fewer than pageSize for the last one, or
+     * null if it could not be loaded
+     */
+    protected abstract List<T> loadPage(int page, int pageSize);
+
+    /**
+     * Decode the image of given item, which will be displayed inside a box of
+     * targetWidth x targetHeight pixels at most. Called on a background
+     * thread.
+     *
+     * @param targetWidth  width of the box, 0 if unknown
+     * @param targetHeight height of the box, 0 if unknown
+     * @return decoded bitmap, or null if it could not be decoded
+     */
+    protected abstract Bitmap decodeImage(T item, int targetWidth, int targetHeight);
+
+    /**
+     * Get width and height of the image of given item from its metadata, so
+     * cards get their final size before the image is decoded. By default the
+     * size is unknown.
+     *
+     * @param outSize receives width at index 0 and height at index 1
+     * @return true if outSize was filled
+     */
+    protected boolean getItemImageSize(T item, int[] outSize) {
+        return false;
+    }
+
+    @Override
+    protected final Bitmap decodeImage(int position) {
+        return decodeImage(position, 0, 0);
+    }
+
+    @Override
+    protected Bitmap decodeImage(int position, int targetWidth, int targetHeight) {
+        final T item = obtainItem(position);
+        if (item == null) {
+            return null;
+        }
+
+        return decodeImage(item, targetWidth, targetHeight);
+    }
+
+    /**
+     * @return item of given position if its page is in memory, otherwise
+     * null. Never blocks.
+     */
+    public T getItem(int position) {
+        synchronized (mPages) {
+            return itemInPage(mPages.get(position / mPageSize), position);
+        }
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    @Override
+    public boolean getImageSize(int position, int[] outSize) {
+        final T item = getItem(position);
+        if (item != null && getItemImageSize(item, outSize)) {
+            return true;
+        }
+
+        return super.getImageSize(position, outSize);
+    }
+
+    /**
+     * Drop every page in memory, they are loaded again when their images are
+     * needed.
+     */
+    public void clearPages() {
+        synchronized (mPages) {
+            mPageGeneration++;
+            mPages.clear();
+        }
+    }
+
+    @Override
+    public void trimMemory(int level) {
+        super.trimMemory(level);
+        clearPages();
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+        clearPages();
+        super.notifyDataSetChanged();
+    }
+
+    @Override
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        synchronized (mPages) {
+            mPageGeneration++;
+            final int lastPage = (positionStart + itemCount - 1) / mPageSize;
+            for (int page = positionStart / mPageSize; page <= lastPage; page++) {
+                mPages.remove(page);
+            }
+        }
+        super.notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    @Override
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        clearPages();
+        super.notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        clearPages();
+        super.notifyItemRangeRemoved(positionStart, itemCount);
+    }
+
+    @Override
+    public void notifyItemMoved(int fromPosition, int toPosition) {
+        clearPages();
+        super.notifyItemMoved(fromPosition, toPosition);
+    }
+
+    /**
+     * Item of given position, loading its page if needed. Called on a
+     * decode thread.
+     */
+    private T obtainItem(int position) {
+        final Integer page = position / mPageSize;
+
+        // Pages in memory are served without waiting for a load
+        synchronized (mPages) {
+            final List<T> items = mPages.get(page);
+            if (items != null) {
+                return itemInPage(items, position);
+            }
+        }
+
+        synchronized (mLoadLock) {
+            final int generation;
+            synchronized (mPages) {
+                // The page may have been loaded while waiting for the lock
+                final List<T> items = mPages.get(page);
+                if (items != null) {
+                    return itemInPage(items, position);
+                }
+                generation = mPageGeneration;
+            }
+
+            List<T> items = null;
+            try {
+                items = loadPage(page, mPageSize);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            if (items == null) {
+                return null;
+            }
+
+            synchronized (mPages) {
+                // Not kept if the data set changed while loading
+                if (generation == mPageGeneration) {
+                    mPages.put(page, items);
+                }
+            }
+            return itemInPage(items, position);
+        }
+    }
+
+    private T itemInPage(List<T> items, int position) {
+        if (items == null) {
+            return null;
+        }
+
+        final int index = position % mPageSize;
+        return index < items.size() ? items.get(index) : null;
+    }
+}
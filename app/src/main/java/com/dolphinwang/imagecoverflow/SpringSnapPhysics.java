@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Critically damped spring pulling towards the card a fling points to. The
+ * motion overshoots nothing and settles quickly, it feels like snapping from
+ * card to card.
+ */
+public class SpringSnapPhysics implements CoverFlowPhysics {
+
+    public static final float DEFAULT_STIFFNESS = 120f;
+
+    public static final float DEFAULT_PROJECTION = 0.2f;
+
+    // Distance to target, in cards, under which the motion is over
+    private static final float REST_DISTANCE = 0.002f;
+
+    // Settling time is searched by steps of one frame, up to a limit
+    private static final float SEARCH_STEP = 1 / 60f;
+    private static final float MAX_DURATION = 10f;
+
+    private final float mOmega;
+    private final float mProjection;
+
+    public SpringSnapPhysics() {
+        this(DEFAULT_STIFFNESS, DEFAULT_PROJECTION);
+    }
+
+    /**
+     * @param stiffness  strength of the spring per unit of mass, higher
+     *                   settles faster
+     * @param projection seconds the fling velocity is projected over to pick
+     *                   the target card
+     */
+    public SpringSnapPhysics(float stiffness, float projection) {
+        if (stiffness <= 0 || projection <= 0) {
+            throw new IllegalArgumentException(
+                    "stiffness and projection must be positive");
+        }
+
+        mOmega = (float) Math.sqrt(stiffness);
+        mProjection = projection;
+    }
+
+    @Override
+    public float getTargetOffset(float startOffset, float velocity) {
+        return (float) Math.floor(startOffset + velocity * mProjection + 0.5);
+    }
+
+    @Override
+    public float getVelocityForTarget(float startOffset, float targetOffset) {
+        return (targetOffset - startOffset) / mProjection;
+    }
+
+    @Override
+    public float getDuration(float startOffset, float velocity) {
+        final float target = getTargetOffset(startOffset, velocity);
+        final float a = startOffset - target;
+        final float b = velocity + mOmega * a;
+
+        float time = 0;
+        while (time < MAX_DURATION && !isAtRest(a, b, time)) {
+            time += SEARCH_STEP;
+        }
+        return Math.min(time, MAX_DURATION);
+    }
+
+    @Override
+    public float getOffset(float startOffset, float velocity, float time) {
+        final float target = getTargetOffset(startOffset, velocity);
+        final float a = startOffset - target;
+        final float b = velocity + mOmega * a;
+        if (time >= MAX_DURATION || isAtRest(a, b, time)) {
+            return target;
+        }
+
+        return target + (a + b * time) * (float) Math.exp(-mOmega * time);
+    }
+
+    /**
+     * Distance to target is (a + b * time) * e^(-omega * time). Its envelope
+     * only decreases once omega * time reaches 1, so the motion is over from
+     * the first time the envelope is below rest distance after that.
+     */
+    private boolean isAtRest(float a, float b, float time) {
+        return time * mOmega >= 1 && (Math.abs(a) + Math.abs(b) * time)
+                * (float) Math.exp(-mOmega * time) < REST_DISTANCE;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.graphics.Bitmap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+
+/**
+ * Bitmap counting every bitmap allocated, with the bytes of its pixels.
+ * Bitmaps taken from a {@link BitmapPool} are not allocations. Shadow bitmaps
+ * have no pixel buffer, so reconfiguring is done here, the way a bitmap with
+ * pixels on the Java heap does it.
+ */
+@Implements(Bitmap.class)
+public class CountingShadowBitmap extends ShadowBitmap {
+
+    static int sAllocations;
+
+    static long sAllocatedBytes;
+
+    // Bytes of pixels the bitmap was created with, -1 until reconfigured
+    private int mAllocationByteCount = -1;
+
+    static void reset() {
+        sAllocations = 0;
+        sAllocatedBytes = 0;
+    }
+
+    @Implementation
+    public static Bitmap createBitmap(int width, int height, Bitmap.Config config) {
+        count(width, height, config);
+        return ShadowBitmap.createBitmap(width, height, config);
+    }
+
+    @Implementation
+    @Override
+    public Bitmap copy(Bitmap.Config config, boolean isMutable) {
+        count(getWidth(), getHeight(), config);
+        return super.copy(config, isMutable);
+    }
+
+    @Implementation
+    public void reconfigure(int width, int height, Bitmap.Config config) {
+        final int allocation = getAllocationByteCount();
+        if (width * height * getBytesPerPixel(config) > allocation) {
+            throw new IllegalArgumentException(
+                    "Bitmap not large enough to support new configuration");
+        }
+
+        mAllocationByteCount = allocation;
+        setWidth(width);
+        setHeight(height);
+        setConfig(config);
+    }
+
+    @Implementation
+    public int getAllocationByteCount() {
+        return mAllocationByteCount < 0 ? getByteCount() : mAllocationByteCount;
+    }
+
+    private static void count(int width, int height, Bitmap.Config config) {
+        sAllocations++;
+        sAllocatedBytes += (long) width * height * getBytesPerPixel(config);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Contract of {@link CoverFlowPhysics} for every engine shipped: a motion
+ * ends exactly on its target, moves towards it without passing it, and lasts
+ * a finite time.
+ */
+@RunWith(Parameterized.class)
+public class CoverFlowPhysicsTest {
+
+    private static final int MOTIONS = 20000;
+
+    private static final float FRAME = 1 / 120f;
+
+    // Float rounding of offsets around a few hundred cards
+    private static final float TOLERANCE = 1e-3f;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{
+                {"friction", new FrictionPhysics()},
+                {"decay", new DecayPhysics()},
+                {"spring", new SpringSnapPhysics()},
+        });
+    }
+
+    private final CoverFlowPhysics mPhysics;
+
+    public CoverFlowPhysicsTest(String name, CoverFlowPhysics physics) {
+        mPhysics = physics;
+    }
+
+    @Test
+    public void motionEndsExactlyOnTarget() {
+        final Random random = new Random(1);
+        for (int i = 0; i < MOTIONS; i++) {
+            final float start = randomStart(random);
+            final float target = randomTarget(random, start);
+            final float velocity = mPhysics.getVelocityForTarget(start, target);
+            final float duration = mPhysics.getDuration(start, velocity);
+
+            assertEquals(target, mPhysics.getTargetOffset(start, velocity), 0);
+            assertEquals(target, mPhysics.getOffset(start, velocity, duration), 0);
+            assertEquals(target, mPhysics.getOffset(start, velocity, duration + 1), 0);
+        }
+    }
+
+    @Test
+    public void flingEndsOnItsTargetOffset() {
+        final Random random = new Random(2);
+        for (int i = 0; i < MOTIONS; i++) {
+            final float start = randomStart(random);
+            final float velocity = (random.nextFloat() - 0.5f) * 200;
+            final float target = mPhysics.getTargetOffset(start, velocity);
+            final float duration = mPhysics.getDuration(start, velocity);
+
+            assertEquals(target, Math.floor(target), 0);
+            assertEquals(target, mPhysics.getOffset(start, velocity, duration), 0);
+        }
+    }
+
+    @Test
+    public void motionMovesTowardsTargetWithoutPassingIt() {
+        final Random random = new Random(3);
+        for (int i = 0; i < MOTIONS / 100; i++) {
+            final float start = randomStart(random);
+            final float target = randomTarget(random, start);
+            final float velocity = mPhysics.getVelocityForTarget(start, target);
+            final float duration = mPhysics.getDuration(start, velocity);
+            final float direction = Math.signum(target - start);
+
+            assertEquals(start, mPhysics.getOffset(start, velocity, 0), TOLERANCE);
+
+            float last = start;
+            for (float time = FRAME; time < duration + FRAME; time += FRAME) {
+                final float offset = mPhysics.getOffset(start, velocity, time);
+                assertTrue("moved back at " + time,
+                        (offset - last) * direction >= -TOLERANCE);
+                assertTrue("passed target at " + time,
+                        (target - offset) * direction >= -TOLERANCE);
+                last = offset;
+            }
+        }
+    }
+
+    @Test
+    public void motionLastsFiniteTime() {
+        final Random random = new Random(4);
+        for (int i = 0; i < MOTIONS; i++) {
+            final float start = randomStart(random);
+            final float target = randomTarget(random, start);
+            final float velocity = mPhysics.getVelocityForTarget(start, target);
+            final float duration = mPhysics.getDuration(start, velocity);
+
+            assertTrue("duration " + duration, duration >= 0 && duration <= 10);
+        }
+    }
+
+    @Test
+    public void stillMotionEndsAtOnce() {
+        final float velocity = mPhysics.getVelocityForTarget(7, 7);
+        assertEquals(0, velocity, 0);
+        assertEquals(7, mPhysics.getOffset(7, velocity, 0), 0);
+        assertEquals(7, mPhysics.getOffset(7, velocity,
+                mPhysics.getDuration(7, velocity)), 0);
+    }
+
+    @Test
+    public void frictionNeverLastsLongerThanMaxDuration() {
+        if (!(mPhysics instanceof FrictionPhysics)) {
+            return;
+        }
+
+        final float[] distances = {1, 50, 1000, 1000000};
+        for (float distance : distances) {
+            final float velocity = mPhysics.getVelocityForTarget(0, distance);
+            final float duration = mPhysics.getDuration(0, velocity);
+
+            assertTrue("duration " + duration,
+                    duration <= FrictionPhysics.DEFAULT_MAX_DURATION + 1e-4f);
+            assertEquals(distance, mPhysics.getOffset(0, velocity, duration), 0);
+        }
+    }
+
+    private static float randomStart(Random random) {
+        return (random.nextFloat() - 0.5f) * 500;
+    }
+
+    private static float randomTarget(Random random, float start) {
+        return (float) Math.floor(start + 0.5) + random.nextInt(201) - 100;
+    }
+}
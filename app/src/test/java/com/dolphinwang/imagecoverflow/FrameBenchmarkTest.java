@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Draw {@link CoverFlowView} along scripted scroll paths, for every
+ * combination of visible images, reflection and layout mode, and for each
+ * variant of the render path: reflection modes, occlusion culling, low memory
+ * mode, background decodes and builds. For each one it reports time per frame, heap bytes allocated per frame and bitmaps
+ * allocated, to build/reports/frame-benchmark.csv.
+ * <p>
+ * Every {@link #GOLDEN_INTERVAL}th frame is recorded by a
+ * {@link RecordingCanvas} and compared against the golden of the
+ * configuration in src/test/resources/goldens, so a change which is meant to
+ * be faster only cannot alter what is drawn. A missing golden fails the test.
+ * After a change which is meant to alter drawing, record them again with:
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest -DrecordGoldens=true
+ * </pre>
+ * Drawing runs on shadows, times and heap bytes tell how the Java side of a
+ * frame changes from one run to another, not how long a device takes. Work
+ * async variants do in background is not part of the time of a frame.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23, shadows = CountingShadowBitmap.class)
+public class FrameBenchmarkTest {
+
+    private static final String RECORD_PROPERTY = "recordGoldens";
+
+    private static final File GOLDEN_DIR = new File("src/test/resources/goldens");
+
+    private static final File ACTUAL_DIR = new File("build/goldens");
+
+    private static final File REPORT = new File("build/reports/frame-benchmark.csv");
+
+    // Time is taken as CPU time of the thread, System.nanoTime() is the
+    // clock of the shadowed looper
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int VIEW_WIDTH = 1080;
+
+    private static final int VIEW_HEIGHT = 720;
+
+    private static final int ITEM_COUNT = 64;
+
+    // Smallest heap Android gives an app, the cache then holds fewer
+    // reflections than 9 visible images need
+    private static final int MEMORY_CLASS = 16;
+
+    // Every that many frames of a path is compared against the golden
+    private static final int GOLDEN_INTERVAL = 15;
+
+    private static final int[] VISIBLE_IMAGES = {3, 5, 7, 9};
+
+    private static final int[] REFLECTION_HEIGHTS = {0, 30};
+
+    private static final CoverFlowView.CoverFlowLayoutMode[] LAYOUT_MODES = {
+            CoverFlowView.CoverFlowLayoutMode.WRAP_CONTENT,
+            CoverFlowView.CoverFlowLayoutMode.MATCH_PARENT};
+
+    // Variants are drawn with a reflection, for these visible images
+    private static final int[] VARIANT_VISIBLE_IMAGES = {5, 9};
+
+    private static final int VARIANT_REFLECTION_HEIGHT = 30;
+
+    /**
+     * How a frame is rendered, other than its layout
+     */
+    private enum Variant {
+        // Bitmap reflections built in the frame which needs them, default
+        // memory mode, no culling, no mipmaps, images at once
+        PLAIN,
+        SHADER,
+        COMPOSITE,
+        CULLED,
+        LOW_MEMORY,
+        // Images decoded, reflections and mipmaps built in background
+        ASYNC,
+        ASYNC_COMPOSITE
+    }
+
+    /**
+     * Scroll path, offsets of consecutive frames
+     */
+    private static class ScrollPath {
+        final String name;
+        final float[] offsets;
+
+        ScrollPath(String name, float[] offsets) {
+            this.name = name;
+            this.offsets = offsets;
+        }
+    }
+
+    private static class Configuration {
+        final int visibleImages;
+        final int reflectionHeight;
+        final CoverFlowView.CoverFlowLayoutMode layoutMode;
+        final Variant variant;
+
+        Configuration(int visibleImages, int reflectionHeight,
+                      CoverFlowView.CoverFlowLayoutMode layoutMode,
+                      Variant variant) {
+            this.visibleImages = visibleImages;
+            this.reflectionHeight = reflectionHeight;
+            this.layoutMode = layoutMode;
+            this.variant = variant;
+        }
+
+        boolean isAsync() {
+            return variant == Variant.ASYNC || variant == Variant.ASYNC_COMPOSITE;
+        }
+
+        String name() {
+            final String name = "v" + visibleImages + "_r" + reflectionHeight + "_"
+                    + layoutMode.name().toLowerCase(Locale.US);
+            return variant == Variant.PLAIN ? name
+                    : name + "_" + variant.name().toLowerCase(Locale.US);
+        }
+    }
+
+    private final List<Configuration> mConfigurations = new ArrayList<Configuration>();
+    private final List<ScrollPath> mPaths = new ArrayList<ScrollPath>();
+
+    private SyntheticCoverFlowAdapter mAdapter;
+    private RecordingCanvas mCanvas;
+
+    // Runs decodes and builds of async variants between frames
+    private final ManualExecutor.Factory mExecutors = new ManualExecutor.Factory();
+
+    private StringBuilder mCsv;
+    private final List<String> mGoldenFailures = new ArrayList<String>();
+
+    @Before
+    public void setUp() {
+        Shadows.shadowOf((ActivityManager) RuntimeEnvironment.application
+                .getSystemService(Context.ACTIVITY_SERVICE)).setMemoryClass(MEMORY_CLASS);
+
+        CoverFlowExecutors.sFactory = mExecutors;
+
+        mAdapter = new SyntheticCoverFlowAdapter(ITEM_COUNT);
+        mCanvas = new RecordingCanvas(mAdapter);
+
+        for (int visibleImages : VISIBLE_IMAGES) {
+            for (int reflectionHeight : REFLECTION_HEIGHTS) {
+                for (CoverFlowView.CoverFlowLayoutMode mode : LAYOUT_MODES) {
+                    mConfigurations.add(new Configuration(visibleImages,
+                            reflectionHeight, mode, Variant.PLAIN));
+                }
+            }
+        }
+        for (Variant variant : Variant.values()) {
+            if (variant == Variant.PLAIN) {
+                continue;
+            }
+            for (int visibleImages : VARIANT_VISIBLE_IMAGES) {
+                for (CoverFlowView.CoverFlowLayoutMode mode : LAYOUT_MODES) {
+                    mConfigurations.add(new Configuration(visibleImages,
+                            VARIANT_REFLECTION_HEIGHT, mode, variant));
+                }
+            }
+        }
+
+        mPaths.add(new ScrollPath("drag", linearPath(0, 6, 90)));
+        mPaths.add(new ScrollPath("fling", easeOutPath(6, -4, 60)));
+        mPaths.add(new ScrollPath("wrap", linearPath(-4, -ITEM_COUNT - 8, 120)));
+
+        mCsv = new StringBuilder("configuration,path,frames,ms_per_frame,max_ms,"
+                + "heap_bytes_per_frame,bitmaps_allocated,bitmap_bytes_allocated\n");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        CoverFlowExecutors.sFactory = null;
+
+        REPORT.getParentFile().mkdirs();
+        write(REPORT, mCsv.toString());
+    }
+
+    @Test
+    public void framesMatchGoldens() throws IOException {
+        final boolean record = Boolean.getBoolean(RECORD_PROPERTY);
+
+        // First configuration once more, untimed, so the JIT is warm
+        runConfiguration(mConfigurations.get(0), true);
+
+        for (Configuration configuration : mConfigurations) {
+            final String frames = runConfiguration(configuration, false);
+            final String golden = configuration.name() + ".txt";
+            if (record) {
+                GOLDEN_DIR.mkdirs();
+                write(new File(GOLDEN_DIR, golden), frames);
+            } else {
+                checkGolden(golden, frames);
+            }
+        }
+
+        if (!mGoldenFailures.isEmpty()) {
+            fail(mGoldenFailures.size() + " configurations differ from their goldens, "
+                    + "actual frames are in " + ACTUAL_DIR + ":\n"
+                    + join(mGoldenFailures));
+        }
+    }
+
+    /**
+     * @return recorded frames of every path
+     */
+    private String runConfiguration(Configuration configuration, boolean warmUp) {
+        mExecutors.clear();
+
+        final CoverFlowView<CoverFlowAdapter> view
+                = new CoverFlowView<CoverFlowAdapter>(RuntimeEnvironment.application);
+        view.setVisibleImage(configuration.visibleImages);
+        view.setReflectionHeight(configuration.reflectionHeight);
+        view.setCoverFlowLayoutMode(configuration.layoutMode);
+        // Synchronous variants draw everything in the frame it is needed.
+        // Async ones run background work between frames, in order, so frames
+        // are the same on every run either way.
+        view.setAsyncReflectionEnabled(configuration.isAsync());
+        view.setMipmapEnabled(configuration.isAsync());
+        if (configuration.variant == Variant.SHADER) {
+            view.setReflectionMode(CoverFlowView.ReflectionMode.SHADER);
+        } else if (configuration.variant == Variant.COMPOSITE
+                || configuration.variant == Variant.ASYNC_COMPOSITE) {
+            view.setReflectionMode(CoverFlowView.ReflectionMode.COMPOSITE);
+        }
+        view.setOcclusionCullingEnabled(configuration.variant == Variant.CULLED);
+        if (configuration.variant == Variant.LOW_MEMORY) {
+            view.setMemoryMode(CoverFlowView.MemoryMode.LOW);
+        }
+        view.setCoverFlowListener(new CoverFlowView.CoverFlowListener<CoverFlowAdapter>() {
+            @Override
+            public void imageOnTop(CoverFlowView<CoverFlowAdapter> coverFlowView,
+                                   int position, float left, float top, float right,
+                                   float bottom) {
+            }
+
+            @Override
+            public void topImageClicked(CoverFlowView<CoverFlowAdapter> coverFlowView,
+                                        int position) {
+            }
+
+            @Override
+            public void invalidationCompleted() {
+            }
+        });
+        view.setAdapter(configuration.isAsync()
+                ? new SyntheticAsyncCoverFlowAdapter(mAdapter) : mAdapter);
+        layout(view);
+
+        for (ScrollPath path : mPaths) {
+            runPath(view, configuration, path, warmUp);
+        }
+
+        view.setAdapter(null);
+        return mCanvas.takeRecord();
+    }
+
+    private void runPath(CoverFlowView<CoverFlowAdapter> view,
+                         Configuration configuration, ScrollPath path,
+                         boolean warmUp) {
+        final float[] offsets = path.offsets;
+        long totalNanos = 0;
+        long maxNanos = 0;
+        long heapBytes = 0;
+        CountingShadowBitmap.reset();
+
+        for (int i = 0; i < offsets.length; i++) {
+            view.setOffset(offsets[i]);
+
+            final long allocatedBefore = allocatedBytes();
+            final long start = THREADS.getCurrentThreadCpuTime();
+            // View#draw() is shadowed to draw the background only
+            view.onDraw(mCanvas);
+            final long nanos = THREADS.getCurrentThreadCpuTime() - start;
+            heapBytes += allocatedBytes() - allocatedBefore;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+
+            if (!warmUp && i % GOLDEN_INTERVAL == 0) {
+                // Again, untimed. Synchronous variants built all it needs
+                // in the timed frame, async ones draw what has arrived.
+                mCanvas.startRecording(String.format(Locale.US,
+                        "%s frame %d offset %.3f", path.name, i, offsets[i]));
+                view.onDraw(mCanvas);
+                mCanvas.stopRecording();
+            }
+
+            // What the frame asked for arrives before the next one, untimed
+            mExecutors.runAll();
+            if (view.isLayoutRequested()) {
+                // A loaded image changed the height of cards
+                layout(view);
+            }
+        }
+
+        if (warmUp) {
+            return;
+        }
+
+        final int frames = offsets.length;
+        mCsv.append(String.format(Locale.US, "%s,%s,%d,%.3f,%.3f,%d,%d,%d\n",
+                configuration.name(), path.name, frames, totalNanos / 1e6 / frames,
+                maxNanos / 1e6, heapBytes / frames, CountingShadowBitmap.sAllocations,
+                CountingShadowBitmap.sAllocatedBytes));
+    }
+
+    private static void layout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+    }
+
+    private void checkGolden(String name, String frames) throws IOException {
+        final InputStream in = getClass().getResourceAsStream("/goldens/" + name);
+        if (in == null) {
+            mGoldenFailures.add(name + ": no golden");
+            ACTUAL_DIR.mkdirs();
+            write(new File(ACTUAL_DIR, name), frames);
+            return;
+        }
+
+        final String golden;
+        try {
+            golden = read(in);
+        } finally {
+            in.close();
+        }
+
+        if (!golden.equals(frames)) {
+            mGoldenFailures.add(name + ": " + firstDifference(golden, frames));
+            ACTUAL_DIR.mkdirs();
+            write(new File(ACTUAL_DIR, name), frames);
+        }
+    }
+
+    private static String firstDifference(String expected, String actual) {
+        final String[] expectedLines = expected.split("\n");
+        final String[] actualLines = actual.split("\n");
+        for (int i = 0; i < Math.min(expectedLines.length, actualLines.length); i++) {
+            if (!expectedLines[i].equals(actualLines[i])) {
+                return "line " + (i + 1) + " expected <" + expectedLines[i].trim()
+                        + "> but was <" + actualLines[i].trim() + ">";
+            }
+        }
+        return expectedLines.length + " lines expected but was " + actualLines.length;
+    }
+
+    /**
+     * @return bytes allocated on the heap by this thread so far
+     */
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String join(List<String> lines) {
+        final StringBuilder joined = new StringBuilder();
+        for (String line : lines) {
+            joined.append(line).append('\n');
+        }
+        return joined.toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static void write(File file, String text) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static float[] linearPath(float from, float to, int frames) {
+        final float[] offsets = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            offsets[i] = from + (to - from) * i / (frames - 1);
+        }
+        return offsets;
+    }
+
+    private static float[] easeOutPath(float from, float to, int frames) {
+        final float[] offsets = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            final float t = (float) i / (frames - 1);
+            offsets[i] = from + (to - from) * (1 - (1 - t) * (1 - t));
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor which starts no thread: tasks wait in its bounded queue, dropped
+ * the same way as by {@link CoverFlowExecutors}, until {@link #runAll()} runs
+ * them on the calling thread. Background work then happens in the same order
+ * on every run.
+ */
+class ManualExecutor extends ThreadPoolExecutor {
+
+    /**
+     * Hands out manual executors to the views and adapters created while it
+     * is installed, and runs them all.
+     */
+    static class Factory implements CoverFlowExecutors.Factory {
+
+        private final List<ManualExecutor> mExecutors = new ArrayList<ManualExecutor>();
+
+        @Override
+        public ThreadPoolExecutor newExecutor(String name, int threads,
+                                              int queueSize,
+                                              RejectedExecutionHandler discardHandler) {
+            final ManualExecutor executor = new ManualExecutor(queueSize, discardHandler);
+            mExecutors.add(executor);
+            return executor;
+        }
+
+        /**
+         * Run every task of every executor, and the tasks they queue, until
+         * all are idle.
+         */
+        void runAll() {
+            boolean ran;
+            do {
+                ran = false;
+                for (int i = 0; i < mExecutors.size(); i++) {
+                    ran |= mExecutors.get(i).runPending();
+                }
+            } while (ran);
+        }
+
+        void clear() {
+            mExecutors.clear();
+        }
+    }
+
+    ManualExecutor(int queueSize, RejectedExecutionHandler discardHandler) {
+        super(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize),
+                discardHandler);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!getQueue().offer(command)) {
+            getRejectedExecutionHandler().rejectedExecution(command, this);
+        }
+    }
+
+    /**
+     * @return true if a task was run
+     */
+    boolean runPending() {
+        boolean ran = false;
+        Runnable task;
+        while ((task = getQueue().poll()) != null) {
+            task.run();
+            ran = true;
+        }
+        return ran;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.DrawFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * Canvas writing down what is drawn on it, one line per operation, in screen
+ * coordinates: which bitmap, the rectangle it covers and how it is painted.
+ * How a matrix was built does not matter, only where it puts things.
+ */
+class RecordingCanvas extends Canvas {
+
+    private final SyntheticCoverFlowAdapter mAdapter;
+
+    private final StringBuilder mRecord = new StringBuilder();
+    private boolean mRecording;
+
+    // Matrix of each save level, reused from frame to frame
+    private final ArrayList<Matrix> mMatrices = new ArrayList<Matrix>();
+    private Matrix mMatrix;
+    private int mSaveCount;
+
+    // Bitmaps not from the adapter, numbered in the order they are first
+    // recorded
+    private final IdentityHashMap<Bitmap, String> mNames = new IdentityHashMap<Bitmap, String>();
+
+    private final RectF mTempRect = new RectF();
+    private final Matrix mTempMatrix = new Matrix();
+
+    RecordingCanvas(SyntheticCoverFlowAdapter adapter) {
+        mAdapter = adapter;
+        mMatrix = new Matrix();
+        mMatrices.add(mMatrix);
+    }
+
+    /**
+     * Start writing down operations, after what was recorded so far
+     */
+    void startRecording(String title) {
+        mRecording = true;
+        mRecord.append(title).append('\n');
+    }
+
+    void stopRecording() {
+        mRecording = false;
+    }
+
+    /**
+     * @return what was recorded since the last call
+     */
+    String takeRecord() {
+        final String record = mRecord.toString();
+        mRecord.setLength(0);
+        mNames.clear();
+        return record;
+    }
+
+    @Override
+    public int save() {
+        mSaveCount++;
+        if (mSaveCount == mMatrices.size()) {
+            mMatrices.add(new Matrix());
+        }
+
+        final Matrix saved = mMatrix;
+        mMatrix = mMatrices.get(mSaveCount);
+        mMatrix.set(saved);
+        return mSaveCount;
+    }
+
+    @Override
+    public void restore() {
+        mSaveCount--;
+        mMatrix = mMatrices.get(mSaveCount);
+    }
+
+    @Override
+    public void concat(Matrix matrix) {
+        if (matrix != null) {
+            mMatrix.preConcat(matrix);
+        }
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        mMatrix.preTranslate(dx, dy);
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+        mMatrix.preScale(sx, sy);
+    }
+
+    @Override
+    public boolean clipRect(float left, float top, float right, float bottom,
+                            Region.Op op) {
+        if (!mRecording) {
+            return true;
+        }
+
+        mTempRect.set(left, top, right, bottom);
+        mMatrix.mapRect(mTempRect);
+        record("clip " + describe(mTempRect) + " " + op);
+        return true;
+    }
+
+    @Override
+    public boolean clipRect(Rect rect, Region.Op op) {
+        return clipRect(rect.left, rect.top, rect.right, rect.bottom, op);
+    }
+
+    @Override
+    public boolean clipRect(RectF rect, Region.Op op) {
+        return clipRect(rect.left, rect.top, rect.right, rect.bottom, op);
+    }
+
+    @Override
+    public void setDrawFilter(DrawFilter filter) {
+        if (!mRecording) {
+            return;
+        }
+
+        record("draw filter " + (filter == null ? "none"
+                : filter.getClass().getSimpleName()));
+    }
+
+    @Override
+    public void drawColor(int color) {
+        if (!mRecording) {
+            return;
+        }
+
+        record(String.format(Locale.US, "color #%08X", color));
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Matrix matrix, Paint paint) {
+        if (!mRecording) {
+            return;
+        }
+
+        mTempMatrix.set(mMatrix);
+        mTempMatrix.preConcat(matrix);
+        mTempRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        mTempMatrix.mapRect(mTempRect);
+        recordBitmap(bitmap, mTempRect, paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        if (!mRecording) {
+            return;
+        }
+
+        mTempRect.set(left, top, left + bitmap.getWidth(), top + bitmap.getHeight());
+        mMatrix.mapRect(mTempRect);
+        recordBitmap(bitmap, mTempRect, paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        if (!mRecording) {
+            return;
+        }
+
+        mTempRect.set(dst);
+        mMatrix.mapRect(mTempRect);
+        recordBitmap(bitmap, mTempRect, paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        if (!mRecording) {
+            return;
+        }
+
+        mTempRect.set(dst);
+        mMatrix.mapRect(mTempRect);
+        recordBitmap(bitmap, mTempRect, paint);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom,
+                         Paint paint) {
+        if (!mRecording) {
+            return;
+        }
+
+        mTempRect.set(left, top, right, bottom);
+        mMatrix.mapRect(mTempRect);
+        record("rect " + describe(mTempRect) + describe(paint));
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    @Override
+    public void drawRect(Rect rect, Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    private void recordBitmap(Bitmap bitmap, RectF bounds, Paint paint) {
+        record("bitmap " + nameOf(bitmap) + " " + describe(bounds)
+                + describe(paint));
+    }
+
+    private void record(String operation) {
+        mRecord.append("  ").append(operation).append('\n');
+    }
+
+    private String nameOf(Bitmap bitmap) {
+        final int position = mAdapter.positionOf(bitmap);
+        if (position >= 0) {
+            return "image " + position;
+        }
+
+        String name = mNames.get(bitmap);
+        if (name == null) {
+            name = "#" + mNames.size();
+            mNames.put(bitmap, name);
+        }
+        // Pooled bitmaps are reconfigured, the size is the one drawn
+        return name + " " + bitmap.getWidth() + "x" + bitmap.getHeight() + " "
+                + bitmap.getConfig();
+    }
+
+    private static String describe(RectF rect) {
+        return String.format(Locale.US, "[%.1f, %.1f, %.1f, %.1f]", rect.left,
+                rect.top, rect.right, rect.bottom);
+    }
+
+    private static String describe(Paint paint) {
+        if (paint == null) {
+            return "";
+        }
+
+        final StringBuilder description = new StringBuilder();
+        description.append(" alpha ").append(paint.getAlpha());
+        if (paint.getShader() != null) {
+            description.append(" shader ")
+                    .append(paint.getShader().getClass().getSimpleName());
+        }
+        if (paint.getXfermode() != null) {
+            description.append(" xfermode");
+        }
+        if (paint.getColorFilter() != null) {
+            description.append(" color filter");
+        }
+        if (paint.isFilterBitmap()) {
+            description.append(" filtered");
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.graphics.Bitmap;
+
+/**
+ * The images of a {@link SyntheticCoverFlowAdapter}, loaded the way of an
+ * {@link AsyncCoverFlowAdapter}: placeholders until decoded in background.
+ */
+class SyntheticAsyncCoverFlowAdapter extends AsyncCoverFlowAdapter {
+
+    private final SyntheticCoverFlowAdapter mImages;
+
+    SyntheticAsyncCoverFlowAdapter(SyntheticCoverFlowAdapter images) {
+        mImages = images;
+    }
+
+    @Override
+    public int getCount() {
+        return mImages.getCount();
+    }
+
+    @Override
+    protected Bitmap decodeImage(int position) {
+        return mImages.getImage(position);
+    }
+}
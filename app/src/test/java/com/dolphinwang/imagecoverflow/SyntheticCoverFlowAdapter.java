@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * Adapter of generated images, the same on every run: a color picked from
+ * the position. Sizes vary so cards of different heights and widths are drawn
+ * side by side.
+ */
+class SyntheticCoverFlowAdapter extends CoverFlowAdapter {
+
+    private static final int[] WIDTHS = {240, 320, 400};
+
+    private static final int[] HEIGHTS = {320, 400, 300, 360};
+
+    private final Bitmap[] mImages;
+
+    SyntheticCoverFlowAdapter(int count) {
+        mImages = new Bitmap[count];
+
+        for (int i = 0; i < count; i++) {
+            final Bitmap image = Bitmap.createBitmap(WIDTHS[i % WIDTHS.length],
+                    HEIGHTS[i % HEIGHTS.length], Bitmap.Config.ARGB_8888);
+            final float hue = (i * 37) % 360;
+            image.eraseColor(Color.HSVToColor(new float[]{hue, 0.6f, 0.9f}));
+            mImages[i] = image;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mImages.length;
+    }
+
+    @Override
+    public Bitmap getImage(int position) {
+        return mImages[position];
+    }
+
+    /**
+     * @return position of image, or -1 if it is not one of this adapter
+     */
+    int positionOf(Bitmap image) {
+        for (int i = 0; i < mImages.length; i++) {
+            if (mImages[i] == image) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+/**
+ * Layout shared by the benchmarks: a 1080 pixels wide view of 800 pixels high
+ * cards, reflecting 30% of the image below a 20 pixels gap. Constants of the
+ * library itself are taken from {@link CoverFlowMath}.
+ */
+final class BenchmarkData {
+
+    static final int VIEW_WIDTH = 1080;
+
+    static final int CHILD_HEIGHT = 800;
+
+    static final int IMAGE_WIDTH = 480;
+
+    static final int IMAGE_HEIGHT = 600;
+
+    static final int ITEM_COUNT = 5000;
+
+    static final float REFLECTION_FRACTION = 0.3f;
+
+    static final int REFLECTION_GAP = 20;
+
+    private BenchmarkData() {
+    }
+
+    static int reflectionTranslateY() {
+        return CoverFlowMath.reflectionTranslateY(0, CHILD_HEIGHT,
+                REFLECTION_FRACTION);
+    }
+}
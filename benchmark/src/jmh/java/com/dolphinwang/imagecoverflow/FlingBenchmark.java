@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole fling at 60 frames per second, as animated by {@link CoverFlowView}
+ * with each {@link CoverFlowPhysics}: the offset of every frame, then the
+ * adapter position and transform of every visible card.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlingBenchmark {
+
+    private static final float MAX_SPEED = 6.0f;
+
+    private static final float FRAME_TIME = 1 / 60f;
+
+    @Param({"3", "5", "7", "9"})
+    public int visibleCount;
+
+    @Param({"friction", "spring", "decay"})
+    public String physics;
+
+    private CoverFlowGeometry mGeometry;
+    private CoverFlowPhysics mPhysics;
+
+    @Setup
+    public void setUp() {
+        final int visibleImages = visibleCount / 2;
+        mGeometry = new CoverFlowGeometry();
+        mGeometry.setup(BenchmarkData.VIEW_WIDTH, 0, 0, visibleImages,
+                CoverFlowMath.CARD_SCALE, CoverFlowMath.alphaStep(visibleImages),
+                BenchmarkData.CHILD_HEIGHT, BenchmarkData.REFLECTION_FRACTION,
+                BenchmarkData.REFLECTION_GAP, 0,
+                BenchmarkData.reflectionTranslateY());
+
+        if ("spring".equals(physics)) {
+            mPhysics = new SpringSnapPhysics();
+        } else if ("decay".equals(physics)) {
+            mPhysics = new DecayPhysics();
+        } else {
+            mPhysics = new FrictionPhysics();
+        }
+    }
+
+    @Benchmark
+    public float fling() {
+        final int visibleImages = visibleCount / 2;
+        final CoverFlowGeometry geometry = mGeometry;
+
+        final CoverFlowPhysics physics = mPhysics;
+        final float startOffset = 0.3f;
+        final float target = physics.getTargetOffset(startOffset, MAX_SPEED);
+        final float velocity = physics.getVelocityForTarget(startOffset, target);
+        final float duration = physics.getDuration(startOffset, velocity);
+
+        float sum = 0;
+        for (float elapsed = 0; elapsed < duration; elapsed += FRAME_TIME) {
+            final float offset = physics.getOffset(startOffset, velocity, elapsed);
+            final int mid = (int) Math.floor(offset + 0.5);
+            for (int i = mid - visibleImages; i <= mid + visibleImages; i++) {
+                sum += CoverFlowMath.wrapPosition(i + visibleImages,
+                        BenchmarkData.ITEM_COUNT);
+                geometry.compute(i - offset, BenchmarkData.IMAGE_WIDTH,
+                        BenchmarkData.IMAGE_HEIGHT);
+                sum += geometry.outTranslateX;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapping the draw positions of one frame into adapter positions, as
+ * getActuallyPosition() of {@link CoverFlowView} does for every visible card.
+ * laps is how many times the ring was scrolled around before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PositionBenchmark {
+
+    @Param({"3", "5", "7", "9"})
+    public int visibleCount;
+
+    @Param({"16", "5000", "1000000"})
+    public int itemCount;
+
+    @Param({"1", "1000"})
+    public int laps;
+
+    @Benchmark
+    public int frame() {
+        final int visibleImages = visibleCount / 2;
+        final int mid = (int) Math.min((long) laps * itemCount, Integer.MAX_VALUE
+                - visibleCount);
+
+        int sum = 0;
+        for (int i = mid - visibleImages; i <= mid + visibleImages; i++) {
+            sum += CoverFlowMath.wrapPosition(i, itemCount);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reflection, composite and mipmap sizing of one frame, as computed by
+ * BitmapUtils and {@link CoverFlowView} for every visible card before any
+ * bitmap is looked up or built.
+ * <p>
+ * The pixel work itself is done by Skia in native code and cannot run on a
+ * plain JVM; the frame benchmark of the sample app measures it on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReflectionBenchmark {
+
+    @Param({"3", "5", "7", "9"})
+    public int visibleCount;
+
+    @Param({"256", "512"})
+    public int imageSize;
+
+    private CoverFlowGeometry mGeometry;
+    private int mVisibleImages;
+    private int mImageHeight;
+    private float mOffset;
+
+    @Setup
+    public void setUp() {
+        mVisibleImages = visibleCount / 2;
+        mGeometry = new CoverFlowGeometry();
+        mGeometry.setup(BenchmarkData.VIEW_WIDTH, 0, 0, mVisibleImages,
+                CoverFlowMath.CARD_SCALE, CoverFlowMath.alphaStep(mVisibleImages),
+                BenchmarkData.CHILD_HEIGHT, BenchmarkData.REFLECTION_FRACTION,
+                BenchmarkData.REFLECTION_GAP, 0,
+                BenchmarkData.reflectionTranslateY());
+        mImageHeight = CoverFlowMath.imageHeight(BenchmarkData.CHILD_HEIGHT,
+                BenchmarkData.REFLECTION_FRACTION, BenchmarkData.REFLECTION_GAP);
+    }
+
+    @Benchmark
+    public int frame() {
+        // Move a bit every frame, as during a scroll
+        mOffset += 0.013f;
+        if (mOffset > 1) {
+            mOffset -= 1;
+        }
+
+        final CoverFlowGeometry geometry = mGeometry;
+        int sum = 0;
+        for (int i = -mVisibleImages; i <= mVisibleImages; i++) {
+            geometry.compute(i - mOffset, imageSize, imageSize);
+            sum += CoverFlowMath.mipmapLevel(geometry.outChildScale);
+            sum += CoverFlowMath.reflectionSourceHeight(imageSize,
+                    BenchmarkData.REFLECTION_FRACTION);
+            sum += CoverFlowMath.scaledWidth(imageSize, imageSize, mImageHeight);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013 Roy Wang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dolphinwang.imagecoverflow;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Card transforms of one frame, as computed by makeChildTransformer() of
+ * {@link CoverFlowView} for every visible card.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformBenchmark {
+
+    @Param({"3", "5", "7", "9"})
+    public int visibleCount;
+
+    private CoverFlowGeometry mGeometry;
+    private int mVisibleImages;
+    private float mOffset;
+
+    @Setup
+    public void setUp() {
+        mVisibleImages = visibleCount / 2;
+        mGeometry = new CoverFlowGeometry();
+        mGeometry.setup(BenchmarkData.VIEW_WIDTH, 0, 0, mVisibleImages,
+                CoverFlowMath.CARD_SCALE, CoverFlowMath.alphaStep(mVisibleImages),
+                BenchmarkData.CHILD_HEIGHT, BenchmarkData.REFLECTION_FRACTION,
+                BenchmarkData.REFLECTION_GAP, 0,
+                BenchmarkData.reflectionTranslateY());
+    }
+
+    @Benchmark
+    public float frame() {
+        // Move a bit every frame, as during a scroll
+        mOffset += 0.013f;
+        if (mOffset > 1) {
+            mOffset -= 1;
+        }
+
+        final CoverFlowGeometry geometry = mGeometry;
+        float sum = 0;
+        for (int i = -mVisibleImages; i <= mVisibleImages; i++) {
+            geometry.compute(i - mOffset, BenchmarkData.IMAGE_WIDTH,
+                    BenchmarkData.IMAGE_HEIGHT);
+            sum += geometry.outTranslateX + geometry.outChildScale
+                    + geometry.outAlpha;
+        }
+        return sum;
+    }
+}
@@ -38,4 +38,10 @@ public class MyCoverFlowAdapter extends CoverFlowAdapter {
     public Bitmap getImage(final int position) {
         return (dataChanged && position == 0) ? image2 : image1;
     }
+
+    @Override
+    public Bitmap peekImage(int position) {
+        // Both images are decoded up front
+        return getImage(position);
+    }
 }